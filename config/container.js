@@ -79,6 +79,10 @@
 // substituted with the current host.
 "gadgets.osDataUri" : "http://%host%/social/rpc",
 
+// Time in milliseconds allowed to resolve all the items of a social API
+// request. Items that are not done by then return a timeout error.
+"social.batchTimeoutMs" : 10000,
+
 // Uncomment these to switch to a secure version
 // 
 //"gadgets.securityTokenType" : "secure",
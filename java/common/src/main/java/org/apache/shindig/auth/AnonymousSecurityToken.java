@@ -59,6 +59,10 @@ public class AnonymousSecurityToken implements SecurityToken {
     return 0L;
   }
 
+  public String getContainer() {
+    return null;
+  }
+
   public String getUpdatedToken() {
     return "";
   }
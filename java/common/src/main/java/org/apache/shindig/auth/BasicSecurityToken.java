@@ -126,6 +126,13 @@ public class BasicSecurityToken implements SecurityToken {
     return Long.parseLong(tokenData.get(MODULE_KEY));
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  public String getContainer() {
+    return null;
+  }
+
   /**
    * {@inheritDoc}
    */
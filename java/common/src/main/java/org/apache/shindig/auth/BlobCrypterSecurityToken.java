@@ -142,6 +142,10 @@ public class BlobCrypterSecurityToken implements SecurityToken {
     this.moduleId = moduleId;
   }
   
+  public String getContainer() {
+    return container;
+  }
+  
   public String getOwnerId() {
     return ownerId;
   }
@@ -54,6 +54,11 @@ public interface SecurityToken {
    */
   public long getModuleId();
 
+  /**
+   * @return the container the token was issued for, or null if it is not known.
+   */
+  public String getContainer();
+
   /**
    * @return an updated version of the token to return to the gadget, or null
    * if there is no need to update the token.
@@ -32,4 +32,17 @@ public interface CacheProvider {
    * @return A Cache configured to the required specification.
    */
   public <K, V> Cache<K, V> createCache(String name);
+
+  /**
+   * Create a named single instance cache whose capacity may be measured in terms of the weight
+   * of its values, such as their size in bytes. Providers that don't support weighted capacities
+   * may ignore the weigher and behave like {@link #createCache(String)}.
+   *
+   * @param <K>  The Key type for the cache
+   * @param <V>  The pay-load type
+   * @param name The name of the cache.
+   * @param weigher Computes the weight of values stored in the cache.
+   * @return A Cache configured to the required specification.
+   */
+  public <K, V> Cache<K, V> createCache(String name, Weigher<? super V> weigher);
 }
@@ -0,0 +1,185 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.shindig.common.cache;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded cache with approximate LRU eviction that does not serialize readers.
+ *
+ * Entries live in a ConcurrentHashMap. Eviction uses the CLOCK (second chance) algorithm: every
+ * read sets a reference bit on the entry without taking any locks, and when the cache grows past
+ * its capacity a writer sweeps the clock, clearing reference bits and evicting the first entry
+ * that has not been read since the last sweep.
+ *
+ * The cache is bounded either by entry count or, when created with a {@link Weigher}, by the total
+ * weight of its values.
+ *
+ * Unlike {@link LruCache}, the capacity may be briefly exceeded while concurrent writers race.
+ */
+public class ConcurrentLruCache<K, V> implements Cache<K, V> {
+  final int capacity;
+  final long maxWeight;
+  private final Weigher<? super V> weigher;
+  private final ConcurrentMap<K, Node<K, V>> map;
+  private final Queue<Node<K, V>> clock = new ConcurrentLinkedQueue<Node<K, V>>();
+  private final AtomicInteger size = new AtomicInteger();
+  private final AtomicLong weight = new AtomicLong();
+  // Number of nodes in the clock, including stale nodes for entries that were removed or replaced.
+  private final AtomicInteger clockSize = new AtomicInteger();
+  private final Lock evictionLock = new ReentrantLock();
+
+  /**
+   * Create a cache that holds at most capacity entries.
+   */
+  public ConcurrentLruCache(int capacity) {
+    this.capacity = capacity;
+    this.maxWeight = capacity;
+    this.weigher = null;
+    this.map = new ConcurrentHashMap<K, Node<K, V>>(capacity, 0.75f,
+        Runtime.getRuntime().availableProcessors() * 4);
+  }
+
+  /**
+   * Create a cache whose values weigh at most maxWeight in total.
+   */
+  public ConcurrentLruCache(long maxWeight, Weigher<? super V> weigher) {
+    this.capacity = -1;
+    this.maxWeight = maxWeight;
+    this.weigher = weigher;
+    this.map = new ConcurrentHashMap<K, Node<K, V>>(16, 0.75f,
+        Runtime.getRuntime().availableProcessors() * 4);
+  }
+
+  public V getElement(K key) {
+    Node<K, V> node = map.get(key);
+    if (node == null) {
+      return null;
+    }
+    node.referenced = true;
+    return node.value;
+  }
+
+  public void addElement(K key, V value) {
+    int nodeWeight = weigher == null ? 1 : weigher.weigh(value);
+    if (nodeWeight > maxWeight) {
+      // Would never fit.
+      removeElement(key);
+      return;
+    }
+    Node<K, V> node = new Node<K, V>(key, value, nodeWeight);
+    Node<K, V> existing = map.put(key, node);
+    if (existing == null) {
+      size.incrementAndGet();
+      weight.addAndGet(nodeWeight);
+    } else {
+      // The replaced node stays in the clock until the next sweep discards it.
+      node.referenced = true;
+      weight.addAndGet(nodeWeight - existing.weight);
+    }
+    // Counted only once it is in the clock, so a sweep never waits for a node that isn't there yet.
+    clock.offer(node);
+    clockSize.incrementAndGet();
+    evict();
+  }
+
+  public V removeElement(K key) {
+    Node<K, V> node = map.remove(key);
+    if (node == null) {
+      return null;
+    }
+    size.decrementAndGet();
+    weight.addAndGet(-node.weight);
+    // The node stays in the clock until the next sweep discards it.
+    evict();
+    return node.value;
+  }
+
+  /**
+   * @return The maximum number of entries, or -1 if the cache is bounded by weight.
+   */
+  public long getCapacity() {
+    return capacity;
+  }
+
+  public long getSize() {
+    return size.get();
+  }
+
+  /**
+   * @return The total weight of all entries. Equal to the size when no weigher is used.
+   */
+  public long getWeight() {
+    return weight.get();
+  }
+
+  private boolean needsSweep() {
+    return weight.get() > maxWeight || clockSize.get() > size.get() * 2 + 16;
+  }
+
+  private void evict() {
+    if (!needsSweep()) {
+      return;
+    }
+    evictionLock.lock();
+    try {
+      while (needsSweep()) {
+        Node<K, V> node = clock.poll();
+        if (node == null) {
+          break;
+        }
+        if (map.get(node.key) != node) {
+          // Removed or replaced since it was added to the clock.
+          clockSize.decrementAndGet();
+        } else if (weight.get() <= maxWeight || node.referenced) {
+          node.referenced = false;
+          clock.offer(node);
+        } else {
+          clockSize.decrementAndGet();
+          if (map.remove(node.key, node)) {
+            size.decrementAndGet();
+            weight.addAndGet(-node.weight);
+          }
+        }
+      }
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  private static class Node<K, V> {
+    final K key;
+    final V value;
+    final int weight;
+    volatile boolean referenced;
+
+    Node(K key, V value, int weight) {
+      this.key = key;
+      this.value = value;
+      this.weight = weight;
+    }
+  }
+}
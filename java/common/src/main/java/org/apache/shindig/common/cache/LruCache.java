@@ -18,18 +18,37 @@
  */
 package org.apache.shindig.common.cache;
 
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
 /**
  * A basic LRU cache. Prefer using EhCache for most purposes to this class.
+ *
+ * The cache is bounded either by entry count or, when created with a {@link Weigher}, by the total
+ * weight of its values.
  */
 public class LruCache<K, V> extends LinkedHashMap<K, V> implements Cache<K, V> {
   final int capacity;
+  final long maxWeight;
+  private final Weigher<? super V> weigher;
+  private long weight;
 
   public LruCache(int capacity) {
     super(capacity, 0.75f, true);
     this.capacity = capacity;
+    this.maxWeight = capacity;
+    this.weigher = null;
+  }
+
+  /**
+   * Create a cache whose values weigh at most maxWeight in total.
+   */
+  public LruCache(long maxWeight, Weigher<? super V> weigher) {
+    super(16, 0.75f, true);
+    this.capacity = -1;
+    this.maxWeight = maxWeight;
+    this.weigher = weigher;
   }
 
   public synchronized V getElement(K key) {
@@ -37,11 +56,25 @@ public class LruCache<K, V> extends LinkedHashMap<K, V> implements Cache<K, V> {
   }
 
   public synchronized void addElement(K key, V value) {
-    super.put(key, value);
+    V old = super.put(key, value);
+    if (weigher != null) {
+      weight += weigh(value) - weigh(old);
+      Iterator<V> eldest = values().iterator();
+      while (weight > maxWeight && eldest.hasNext()) {
+        weight -= weigh(eldest.next());
+        eldest.remove();
+      }
+    }
   }
 
   public synchronized V removeElement(K key) {
-    return super.remove(key);
+    V value = super.remove(key);
+    weight -= weigh(value);
+    return value;
+  }
+
+  private long weigh(V value) {
+    return weigher == null || value == null ? 0 : weigher.weigh(value);
   }
 
   public long getCapacity() {
@@ -54,6 +87,6 @@ public class LruCache<K, V> extends LinkedHashMap<K, V> implements Cache<K, V> {
 
   @Override
   protected synchronized boolean removeEldestEntry(Map.Entry<K, V> eldest) {
-    return size() > capacity;
+    return weigher == null && size() > capacity;
   }
 }
@@ -37,6 +37,14 @@ import java.util.logging.Logger;
  *
  * The default value is expected under shindig.cache.lru.default.capacity
  *
+ * Caches created with a {@link Weigher} may instead be bounded by total weight, in bytes, with
+ *
+ * shindig.cache.lru.<cache name>.maxBytes=foo
+ *
+ * Setting shindig.cache.lru.concurrent=true produces {@link ConcurrentLruCache} instances, which
+ * use approximate LRU eviction but do not synchronize reads. This applies to both count and
+ * weight bounded caches.
+ *
  * An in memory LRU cache only scales so far. For a production-worthy cache, use
  * {@code EhCacheCacheProvider}.
  */
@@ -45,6 +53,7 @@ public class LruCacheProvider implements CacheProvider {
   private final int defaultCapacity;
   private final Injector injector;
   private final Map<String, Cache<?, ?>> caches = Maps.newConcurrentHashMap();
+  private boolean concurrent;
 
   @Inject
   public LruCacheProvider(Injector injector,
@@ -57,6 +66,34 @@ public class LruCacheProvider implements CacheProvider {
     this(null, capacity);
   }
 
+  @Inject(optional = true)
+  public void setConcurrent(@Named("shindig.cache.lru.concurrent") boolean concurrent) {
+    this.concurrent = concurrent;
+  }
+
+  private <K, V> Cache<K, V> newCache(int capacity) {
+    if (concurrent) {
+      return new ConcurrentLruCache<K, V>(capacity);
+    }
+    return new LruCache<K, V>(capacity);
+  }
+
+  private long getMaxBytes(String name) {
+    if (injector != null && name != null) {
+      String key = "shindig.cache.lru." + name + ".maxBytes";
+      Key<String> guiceKey = Key.get(String.class, Names.named(key));
+      if (injector.getBinding(guiceKey) != null) {
+        String value = injector.getInstance(guiceKey);
+        try {
+          return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+          LOG.warning("Invalid LRU maxBytes configured for " + name);
+        }
+      }
+    }
+    return -1;
+  }
+
   private int getCapacity(String name) {
     if (injector != null && name != null) {
       String key = "shindig.cache.lru." + name + ".capacity";
@@ -75,17 +112,36 @@ public class LruCacheProvider implements CacheProvider {
     return defaultCapacity;
   }
 
+  @SuppressWarnings("unchecked")
+  public <K, V> Cache<K, V> createCache(String name, Weigher<? super V> weigher) {
+    long maxBytes = getMaxBytes(name);
+    if (maxBytes == -1) {
+      return createCache(name);
+    }
+    Cache<K, V> cache = (Cache<K, V>) caches.get(name);
+    if (cache == null) {
+      LOG.info("Creating cache named " + name + " limited to " + maxBytes + " bytes");
+      if (concurrent) {
+        cache = new ConcurrentLruCache<K, V>(maxBytes, weigher);
+      } else {
+        cache = new LruCache<K, V>(maxBytes, weigher);
+      }
+      caches.put(name, cache);
+    }
+    return cache;
+  }
+
   @SuppressWarnings("unchecked")
   public <K, V> Cache<K, V> createCache(String name) {
     int capacity = getCapacity(name);
     if (name == null) {
       LOG.info("Creating anonymous cache");
-      return new LruCache<K, V>(capacity);
+      return newCache(capacity);
     } else {
       Cache<K, V> cache = (Cache<K, V>) caches.get(name);
       if (cache == null) {
         LOG.info("Creating cache named " + name);
-        cache = new LruCache<K, V>(capacity);
+        cache = newCache(capacity);
         caches.put(name, cache);
       }
       return cache;
@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.shindig.common.cache;
+
+import com.google.common.collect.Maps;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Coalesces concurrent loads of the same key so that only one of them does the work.
+ *
+ * The first caller for a key runs the loader on its own thread. Any caller that arrives while that
+ * load is still running receives the same Future and waits on its result instead of starting a
+ * load of its own. Once a load completes the key is forgotten, so results are never retained here;
+ * callers are expected to store them in a cache.
+ *
+ * Loads may also be started in the background with {@link #executeAsync}, which is used to refresh
+ * stale cache entries without blocking the request that noticed they were stale.
+ */
+public class SingleFlight<K, V> {
+  private final ConcurrentMap<K, FutureTask<V>> calls = Maps.newConcurrentHashMap();
+
+  /**
+   * Load the value for the given key, or join a load of the same key that is already running.
+   *
+   * @return A Future that is complete when this method returns if the caller ran the loader
+   *     itself, or the in-flight load otherwise. Exceptions thrown by the loader are reported
+   *     through the Future as an ExecutionException.
+   */
+  public Future<V> execute(K key, Callable<V> loader) {
+    FutureTask<V> task = new FutureTask<V>(loader);
+    FutureTask<V> existing = calls.putIfAbsent(key, task);
+    if (existing != null) {
+      return existing;
+    }
+    try {
+      task.run();
+    } finally {
+      calls.remove(key, task);
+    }
+    return task;
+  }
+
+  /**
+   * Start a load of the given key on the executor, unless a load of that key is already running.
+   *
+   * @return True if a new load was scheduled, false if one was already running or the executor
+   *     rejected the load.
+   */
+  public boolean executeAsync(final K key, Callable<V> loader, Executor executor) {
+    FutureTask<V> task = new FutureTask<V>(loader) {
+      @Override
+      protected void done() {
+        calls.remove(key, this);
+      }
+    };
+    if (calls.putIfAbsent(key, task) != null) {
+      return false;
+    }
+    try {
+      executor.execute(task);
+    } catch (RejectedExecutionException e) {
+      calls.remove(key, task);
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * @return True if a load of the given key is currently running.
+   */
+  public boolean isInFlight(K key) {
+    return calls.containsKey(key);
+  }
+}
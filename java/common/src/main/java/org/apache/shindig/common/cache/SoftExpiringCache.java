@@ -20,26 +20,20 @@ package org.apache.shindig.common.cache;
 
 import org.apache.shindig.common.util.TimeSource;
 
-import com.google.common.base.ReferenceType;
-import com.google.common.collect.ReferenceMap;
-
 /**
  * A cache that uses a soft expiration policy. Entries will be kept around for potentially as long
  * as the underlying cache permits, but we keep a timestamp around to retain a notion of the actual
  * age. This provides users of this class with the option of keeping an "expired" entry beyond the
  * normal lifetime.
  *
- * As soon as an entry expires from the underlying cache, it disappears from here as well.
+ * The expiration time is stored in the underlying cache alongside the value, so as soon as an entry
+ * is removed from the underlying cache, it disappears from here as well.
  *
  * Note that this isn't actually a cache itself, but rather a wrapper for one. It differs in the
  * getElement method substantially, since the returned objects are not the same as the V parameter.
  */
 public class SoftExpiringCache<K, V> {
-  private final Cache<K, V> cache;
-
-  // We keep a weak reference to the value stored in the cache so that when the value in the actual
-  // cache is removed, we should lose it here as well.
-  private final ReferenceMap<V, Long> expirationTimes;
+  private final Cache<K, TimestampedValue<V>> cache;
   private TimeSource timeSource;
 
   /**
@@ -48,9 +42,8 @@ public class SoftExpiringCache<K, V> {
    *
    * @param cache The underlying cache that will store actual data.
    */
-  public SoftExpiringCache(Cache<K, V>  cache) {
+  public SoftExpiringCache(Cache<K, TimestampedValue<V>> cache) {
     this.cache = cache;
-    expirationTimes = new ReferenceMap<V, Long>(ReferenceType.WEAK, ReferenceType.STRONG);
     timeSource = new TimeSource();
   }
 
@@ -61,18 +54,14 @@ public class SoftExpiringCache<K, V> {
    * @return Element in the cache, if present and not timed out.
    */
   public CachedObject<V> getElement(K key) {
-    V value = cache.getElement(key);
-    if (value == null) {
+    TimestampedValue<V> entry = cache.getElement(key);
+    if (entry == null) {
       return null;
     }
 
-    Long expiration = expirationTimes.get(value);
-
-    if (expiration == null) {
-      return null;
-    }
-
-    return new CachedObject<V>(value, expiration < timeSource.currentTimeMillis());
+    long now = timeSource.currentTimeMillis();
+    return new CachedObject<V>(entry.value, entry.expiration < now,
+        Math.max(0, now - entry.expiration));
   }
 
   /**
@@ -85,8 +74,7 @@ public class SoftExpiringCache<K, V> {
    */
   public void addElement(K key, V value, long maxAge) {
     long now = timeSource.currentTimeMillis();
-    cache.addElement(key, value);
-    expirationTimes.put(value, now + maxAge);
+    cache.addElement(key, new TimestampedValue<V>(value, now + maxAge));
   }
 
   /**
@@ -98,13 +86,29 @@ public class SoftExpiringCache<K, V> {
     this.timeSource = timeSource;
   }
 
+  /**
+   * A value as stored in the underlying cache, along with the time at which it expires.
+   */
+  public static class TimestampedValue<V> {
+    private final V value;
+    private final long expiration;
+
+    private TimestampedValue(V value, long expiration) {
+      this.value = value;
+      this.expiration = expiration;
+    }
+  }
+
   public static class CachedObject<V> {
     public final V obj;
     public final boolean isExpired;
+    /** How long ago the entry expired, in milliseconds. 0 if it has not expired. */
+    public final long staleness;
 
-    private CachedObject(V obj, boolean isExpired) {
+    private CachedObject(V obj, boolean isExpired, long staleness) {
       this.obj = obj;
       this.isExpired = isExpired;
+      this.staleness = staleness;
     }
   }
 }
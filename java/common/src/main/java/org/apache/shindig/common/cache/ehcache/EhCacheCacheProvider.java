@@ -20,6 +20,7 @@ package org.apache.shindig.common.cache.ehcache;
 
 import org.apache.shindig.common.cache.Cache;
 import org.apache.shindig.common.cache.CacheProvider;
+import org.apache.shindig.common.cache.Weigher;
 import org.apache.shindig.common.util.ResourceLoader;
 
 import com.google.common.collect.Maps;
@@ -110,4 +111,17 @@ public class EhCacheCacheProvider implements CacheProvider {
     }
   }
 
+  /**
+   * EhCache bounds caches by entry count, so the weigher is ignored. Caches that would be bounded
+   * by weight should have an explicit entry in the EhCache configuration, since the default cache
+   * is sized for small values.
+   */
+  public <K, V> Cache<K, V> createCache(String name, Weigher<? super V> weigher) {
+    if (name != null && !caches.containsKey(name) && !cacheManager.cacheExists(name)) {
+      LOG.warning("No EhCache configuration for weighted cache " + name +
+          ", falling back to the default cache configuration");
+    }
+    return createCache(name);
+  }
+
 }
@@ -39,6 +39,7 @@ public class FakeGadgetToken implements SecurityToken {
   private String domain = null;
   private String appUrl = null;
   private int moduleId = 0;
+  private String container = null;
 
   public FakeGadgetToken setUpdatedToken(String updatedToken) {
     this.updatedToken = updatedToken;
@@ -80,6 +81,11 @@ public class FakeGadgetToken implements SecurityToken {
     return this;
   }
 
+  public FakeGadgetToken setContainer(String container) {
+    this.container = container;
+    return this;
+  }
+
   public String getOwnerId() {
     return ownerId;
   }
@@ -108,6 +114,10 @@ public class FakeGadgetToken implements SecurityToken {
     return moduleId;
   }
 
+  public String getContainer() {
+    return container;
+  }
+
   public String getUpdatedToken() {
     return updatedToken;
   }
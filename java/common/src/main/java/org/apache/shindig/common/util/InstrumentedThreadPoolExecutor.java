@@ -0,0 +1,177 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shindig.common.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A fixed size thread pool with a bounded queue that keeps track of how long tasks wait and run.
+ *
+ * When both the threads and the queue are full, new tasks run in the thread that submits them.
+ * That slows down the submitter instead of failing its work or starting more threads. Pools whose
+ * submitters can't afford to wait may reject those tasks instead.
+ */
+public class InstrumentedThreadPoolExecutor extends ThreadPoolExecutor
+    implements InstrumentedThreadPoolExecutorMBean {
+  private final String name;
+  private final AtomicLong completed = new AtomicLong();
+  private final AtomicLong rejected = new AtomicLong();
+  private final AtomicLong queueNanos = new AtomicLong();
+  private final AtomicLong runNanos = new AtomicLong();
+
+  /**
+   * @param name Identifies the pool in metrics and thread names.
+   * @param threads The number of threads in the pool.
+   * @param queueSize How many tasks may wait for a thread. With 0, tasks are handed straight to
+   *     an idle thread or else run by the submitter.
+   */
+  public InstrumentedThreadPoolExecutor(String name, int threads, int queueSize) {
+    this(name, threads, queueSize, true);
+  }
+
+  /**
+   * @param callerRuns Whether tasks that don't fit run in the submitting thread. If false they
+   *     are rejected with a RejectedExecutionException.
+   */
+  public InstrumentedThreadPoolExecutor(String name, int threads, int queueSize,
+      boolean callerRuns) {
+    super(threads, threads, 60L, TimeUnit.SECONDS, createQueue(queueSize),
+        new NamedThreadFactory(name));
+    this.name = name;
+    setRejectedExecutionHandler(new RejectionHandler(callerRuns));
+  }
+
+  private static BlockingQueue<Runnable> createQueue(int queueSize) {
+    if (queueSize <= 0) {
+      return new SynchronousQueue<Runnable>();
+    }
+    return new ArrayBlockingQueue<Runnable>(queueSize);
+  }
+
+  @Override
+  public void execute(Runnable command) {
+    super.execute(new TimedTask(command));
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * @return The number of tasks waiting for a thread.
+   */
+  public int getQueueDepth() {
+    return getQueue().size();
+  }
+
+  /**
+   * @return The number of tasks that ran in the submitting thread, or were rejected, because the
+   *     pool was full.
+   */
+  public long getRejectedCount() {
+    return rejected.get();
+  }
+
+  /**
+   * @return The number of tasks that have finished, including those run by their submitter.
+   */
+  public long getFinishedCount() {
+    return completed.get();
+  }
+
+  public long getAverageQueueMillis() {
+    long count = completed.get();
+    return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(queueNanos.get() / count);
+  }
+
+  public long getAverageRunMillis() {
+    long count = completed.get();
+    return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(runNanos.get() / count);
+  }
+
+  @Override
+  public String toString() {
+    return name + ": threads=" + getPoolSize() + ", active=" + getActiveCount() +
+        ", queued=" + getQueueDepth() + ", finished=" + getFinishedCount() +
+        ", rejected=" + getRejectedCount() + ", avgQueueMillis=" + getAverageQueueMillis() +
+        ", avgRunMillis=" + getAverageRunMillis();
+  }
+
+  private class TimedTask implements Runnable {
+    private final Runnable task;
+    private final long submitted = System.nanoTime();
+
+    TimedTask(Runnable task) {
+      this.task = task;
+    }
+
+    public void run() {
+      long start = System.nanoTime();
+      try {
+        task.run();
+      } finally {
+        queueNanos.addAndGet(start - submitted);
+        runNanos.addAndGet(System.nanoTime() - start);
+        completed.incrementAndGet();
+      }
+    }
+  }
+
+  private class RejectionHandler implements RejectedExecutionHandler {
+    private final boolean callerRuns;
+
+    RejectionHandler(boolean callerRuns) {
+      this.callerRuns = callerRuns;
+    }
+
+    public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+      if (executor.isShutdown()) {
+        throw new RejectedExecutionException(name + " has been shut down");
+      }
+      rejected.incrementAndGet();
+      if (!callerRuns) {
+        throw new RejectedExecutionException(name + " is full");
+      }
+      task.run();
+    }
+  }
+
+  private static class NamedThreadFactory implements ThreadFactory {
+    private final String name;
+    private final AtomicInteger count = new AtomicInteger();
+
+    NamedThreadFactory(String name) {
+      this.name = name;
+    }
+
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, "shindig-" + name + '-' + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shindig.common.util;
+
+import java.lang.management.ManagementFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Publishes runtime statistics with the platform MBean server, next to the cache statistics that
+ * EhCache registers, so they can be read with any JMX console.
+ */
+public final class MBeanRegistry {
+  private static final Logger LOG = Logger.getLogger(MBeanRegistry.class.getName());
+
+  public static final String DOMAIN = "org.apache.shindig";
+
+  private MBeanRegistry() {}
+
+  /**
+   * @return The name an MBean of the given type and name is registered under.
+   */
+  public static ObjectName getObjectName(String type, String name) throws JMException {
+    return new ObjectName(DOMAIN + ":type=" + type + ",name=" + name);
+  }
+
+  /**
+   * Registers an MBean, replacing any registered under the same name earlier, such as by a
+   * previous deployment of the application. Failures are logged rather than thrown, since
+   * statistics are never worth failing a request or startup over.
+   */
+  public static void register(String type, String name, Object mbean) {
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName objectName = getObjectName(type, name);
+      if (server.isRegistered(objectName)) {
+        server.unregisterMBean(objectName);
+      }
+      server.registerMBean(mbean, objectName);
+    } catch (JMException e) {
+      LOG.log(Level.WARNING, "Unable to register " + type + ' ' + name + " with JMX", e);
+    }
+  }
+}
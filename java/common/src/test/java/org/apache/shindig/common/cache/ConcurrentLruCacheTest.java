@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.shindig.common.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ConcurrentLruCacheTest {
+  private static final int TEST_CAPACITY = 2;
+
+  private final ConcurrentLruCache<String, String> cache
+      = new ConcurrentLruCache<String, String>(TEST_CAPACITY);
+
+  @Test
+  public void normalCapacityOk() {
+    for (int i = 0; i < TEST_CAPACITY; ++i) {
+      cache.addElement(Integer.toString(i), Integer.toString(i));
+    }
+    assertEquals(TEST_CAPACITY, cache.getSize());
+    assertEquals(TEST_CAPACITY, cache.getCapacity());
+    assertEquals("0", cache.getElement("0"));
+  }
+
+  @Test
+  public void exceededCapacityRemoved() {
+    for (int i = 0; i < TEST_CAPACITY + 1; ++i) {
+      cache.addElement(Integer.toString(i), Integer.toString(i));
+    }
+    assertEquals(TEST_CAPACITY, cache.getSize());
+    assertNull(cache.getElement("0"));
+  }
+
+  @Test
+  public void recentlyReadEntrySurvivesEviction() {
+    cache.addElement("0", "0");
+    cache.addElement("1", "1");
+    cache.getElement("0");
+    cache.addElement("2", "2");
+    assertEquals("0", cache.getElement("0"));
+    assertNull(cache.getElement("1"));
+    assertEquals("2", cache.getElement("2"));
+  }
+
+  @Test
+  public void replaceExisting() {
+    cache.addElement("0", "0");
+    cache.addElement("0", "foo");
+    assertEquals(1, cache.getSize());
+    assertEquals("foo", cache.getElement("0"));
+  }
+
+  @Test
+  public void removeElement() {
+    cache.addElement("0", "0");
+    assertEquals("0", cache.removeElement("0"));
+    assertNull(cache.getElement("0"));
+    assertEquals(0, cache.getSize());
+    assertNull(cache.removeElement("0"));
+  }
+
+  private static final Weigher<String> LENGTH_WEIGHER = new Weigher<String>() {
+    public int weigh(String value) {
+      return value.length();
+    }
+  };
+
+  @Test
+  public void weightedCapacity() {
+    ConcurrentLruCache<String, String> weighted
+        = new ConcurrentLruCache<String, String>(10, LENGTH_WEIGHER);
+    weighted.addElement("a", "12345");
+    weighted.addElement("b", "1234");
+    assertEquals(9, weighted.getWeight());
+    assertEquals(2, weighted.getSize());
+    assertEquals(-1, weighted.getCapacity());
+
+    weighted.addElement("c", "12");
+    assertNull(weighted.getElement("a"));
+    assertEquals("1234", weighted.getElement("b"));
+    assertEquals("12", weighted.getElement("c"));
+    assertEquals(6, weighted.getWeight());
+  }
+
+  @Test
+  public void weightedReplaceAdjustsWeight() {
+    ConcurrentLruCache<String, String> weighted
+        = new ConcurrentLruCache<String, String>(10, LENGTH_WEIGHER);
+    weighted.addElement("a", "12345");
+    weighted.addElement("a", "12");
+    assertEquals(2, weighted.getWeight());
+    assertEquals(1, weighted.getSize());
+    weighted.removeElement("a");
+    assertEquals(0, weighted.getWeight());
+  }
+
+  @Test
+  public void tooHeavyNotAdded() {
+    ConcurrentLruCache<String, String> weighted
+        = new ConcurrentLruCache<String, String>(3, LENGTH_WEIGHER);
+    weighted.addElement("a", "1234");
+    assertNull(weighted.getElement("a"));
+    assertEquals(0, weighted.getWeight());
+  }
+
+  @Test
+  public void concurrentWritersStayBounded() throws Exception {
+    final ConcurrentLruCache<Integer, String> cache = new ConcurrentLruCache<Integer, String>(10);
+    Thread[] writers = new Thread[8];
+    for (int i = 0; i < writers.length; i++) {
+      final int offset = i * 10000;
+      writers[i] = new Thread() {
+        @Override
+        public void run() {
+          for (int j = 0; j < 10000; j++) {
+            cache.addElement(offset + j, "value");
+            if (j % 3 == 0) {
+              cache.removeElement(offset + j);
+            }
+          }
+        }
+      };
+      writers[i].start();
+    }
+    for (Thread writer : writers) {
+      writer.join(10000);
+      assertFalse("Writer did not finish", writer.isAlive());
+    }
+    assertTrue(cache.getSize() <= 10);
+  }
+}
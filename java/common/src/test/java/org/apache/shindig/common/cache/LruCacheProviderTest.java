@@ -20,6 +20,7 @@ package org.apache.shindig.common.cache;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 import com.google.inject.AbstractModule;
 import com.google.inject.Guice;
@@ -48,6 +49,66 @@ public class LruCacheProviderTest {
     assertEquals(10, getCache(provider, null).capacity);
   }
 
+  @Test
+  public void concurrentCaches() throws Exception {
+    LruCacheProvider provider = new LruCacheProvider(10);
+    provider.setConcurrent(true);
+    Cache<Object, Object> cache = provider.createCache("foo");
+    assertTrue(cache instanceof ConcurrentLruCache);
+    assertEquals(10, cache.getCapacity());
+  }
+
+  @Test
+  public void configuredMaxBytes() throws Exception {
+    Module module = new AbstractModule() {
+      @Override
+      public void configure() {
+        binder().bindConstant()
+            .annotatedWith(Names.named("shindig.cache.lru.foo.maxBytes"))
+            .to("1000");
+      }
+    };
+    LruCacheProvider provider = new LruCacheProvider(Guice.createInjector(module), 10);
+    Cache<String, String> cache = provider.createCache("foo", new Weigher<String>() {
+      public int weigh(String value) {
+        return value.length();
+      }
+    });
+    assertEquals(1000, ((LruCache<String, String>) cache).maxWeight);
+    assertSame(cache, provider.createCache("foo"));
+  }
+
+  @Test
+  public void configuredMaxBytesConcurrent() throws Exception {
+    Module module = new AbstractModule() {
+      @Override
+      public void configure() {
+        binder().bindConstant()
+            .annotatedWith(Names.named("shindig.cache.lru.foo.maxBytes"))
+            .to("1000");
+      }
+    };
+    LruCacheProvider provider = new LruCacheProvider(Guice.createInjector(module), 10);
+    provider.setConcurrent(true);
+    Cache<String, String> cache = provider.createCache("foo", new Weigher<String>() {
+      public int weigh(String value) {
+        return value.length();
+      }
+    });
+    assertEquals(1000, ((ConcurrentLruCache<String, String>) cache).maxWeight);
+  }
+
+  @Test
+  public void weigherIgnoredWithoutMaxBytes() throws Exception {
+    LruCacheProvider provider = createProvider("foo", "100", 10);
+    Cache<String, String> cache = provider.createCache("foo", new Weigher<String>() {
+      public int weigh(String value) {
+        return value.length();
+      }
+    });
+    assertEquals(100, cache.getCapacity());
+  }
+
   LruCacheProvider createProvider(final String name, final String capacity, int defaultCapacity) {
     Module module = new AbstractModule() {
       @Override
@@ -49,4 +49,46 @@ public class LruCacheTest {
     assertEquals(TEST_CAPACITY, cache.getCapacity());
     assertEquals(null, cache.getElement("0"));
   }
+
+  @Test
+  public void exceededWeightRemoved() {
+    LruCache<String, String> weighted = new LruCache<String, String>(10, new Weigher<String>() {
+      public int weigh(String value) {
+        return value.length();
+      }
+    });
+    weighted.addElement("a", "aaaa");
+    weighted.addElement("b", "bbbb");
+    weighted.getElement("a");
+    weighted.addElement("c", "cccc");
+    assertEquals(2, weighted.getSize());
+    assertEquals("aaaa", weighted.getElement("a"));
+    assertEquals(null, weighted.getElement("b"));
+    assertEquals("cccc", weighted.getElement("c"));
+  }
+
+  @Test
+  public void replacedValueAdjustsWeight() {
+    LruCache<String, String> weighted = new LruCache<String, String>(10, new Weigher<String>() {
+      public int weigh(String value) {
+        return value.length();
+      }
+    });
+    weighted.addElement("a", "aaaaaaaa");
+    weighted.addElement("a", "a");
+    weighted.addElement("b", "bbbbbbbb");
+    assertEquals(2, weighted.getSize());
+  }
+
+  @Test
+  public void nullValueWeighsNothing() {
+    LruCache<String, String> weighted = new LruCache<String, String>(10, new Weigher<String>() {
+      public int weigh(String value) {
+        return value.length();
+      }
+    });
+    weighted.addElement("a", null);
+    weighted.addElement("b", "bbbbbbbbbb");
+    assertEquals(2, weighted.getSize());
+  }
 }
@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.shindig.common.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SingleFlightTest {
+  private final SingleFlight<String, String> singleFlight = new SingleFlight<String, String>();
+
+  @Test
+  public void loadRunsOnCallingThread() throws Exception {
+    final Thread caller = Thread.currentThread();
+    Future<String> result = singleFlight.execute("foo", new Callable<String>() {
+      public String call() {
+        assertSame(caller, Thread.currentThread());
+        return "bar";
+      }
+    });
+    assertTrue(result.isDone());
+    assertEquals("bar", result.get());
+    assertFalse(singleFlight.isInFlight("foo"));
+  }
+
+  @Test
+  public void loadFailureReported() throws Exception {
+    Future<String> result = singleFlight.execute("foo", new Callable<String>() {
+      public String call() throws Exception {
+        throw new IllegalStateException("broken");
+      }
+    });
+    try {
+      result.get();
+      fail("Should have thrown");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+    assertFalse(singleFlight.isInFlight("foo"));
+  }
+
+  @Test
+  public void concurrentCallersShareLoad() throws Exception {
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final AtomicInteger loads = new AtomicInteger();
+
+    Thread leader = new Thread() {
+      @Override
+      public void run() {
+        singleFlight.execute("foo", new Callable<String>() {
+          public String call() throws Exception {
+            loads.incrementAndGet();
+            started.countDown();
+            release.await();
+            return "bar";
+          }
+        });
+      }
+    };
+    leader.start();
+    started.await();
+
+    assertTrue(singleFlight.isInFlight("foo"));
+    Future<String> joined = singleFlight.execute("foo", new Callable<String>() {
+      public String call() {
+        loads.incrementAndGet();
+        return "other";
+      }
+    });
+    release.countDown();
+
+    assertEquals("bar", joined.get());
+    leader.join();
+    assertEquals(1, loads.get());
+  }
+
+  @Test
+  public void asyncLoadDeduplicated() throws Exception {
+    final AtomicInteger loads = new AtomicInteger();
+    final Runnable[] pending = new Runnable[1];
+    Executor executor = new Executor() {
+      public void execute(Runnable command) {
+        pending[0] = command;
+      }
+    };
+    Callable<String> loader = new Callable<String>() {
+      public String call() {
+        loads.incrementAndGet();
+        return "bar";
+      }
+    };
+
+    assertTrue(singleFlight.executeAsync("foo", loader, executor));
+    assertTrue(singleFlight.isInFlight("foo"));
+    assertFalse(singleFlight.executeAsync("foo", loader, executor));
+
+    pending[0].run();
+    assertEquals(1, loads.get());
+    assertFalse(singleFlight.isInFlight("foo"));
+    assertTrue(singleFlight.executeAsync("foo", loader, executor));
+  }
+
+  @Test
+  public void asyncLoadRejected() throws Exception {
+    Executor executor = new Executor() {
+      public void execute(Runnable command) {
+        throw new RejectedExecutionException();
+      }
+    };
+    assertFalse(singleFlight.executeAsync("foo", new Callable<String>() {
+      public String call() {
+        return "bar";
+      }
+    }, executor));
+    assertFalse(singleFlight.isInFlight("foo"));
+  }
+}
@@ -18,18 +18,19 @@
  */
 package org.apache.shindig.common.cache;
 
+import org.apache.shindig.common.cache.SoftExpiringCache.TimestampedValue;
 import org.apache.shindig.common.util.FakeTimeSource;
 
 import junit.framework.TestCase;
 
 public class SoftExpiringCacheTest extends TestCase {
   private FakeTimeSource timeSource;
-  private Cache<String, String> cache;
+  private Cache<String, TimestampedValue<String>> cache;
 
   @Override
   public void setUp() throws Exception {
     timeSource = new FakeTimeSource(0);
-    cache = new LruCache<String, String>(5);
+    cache = new LruCache<String, TimestampedValue<String>>(5);
   }
 
   private SoftExpiringCache<String, String> makeSoftExpiringCache() {
@@ -46,11 +47,20 @@ public class SoftExpiringCacheTest extends TestCase {
     // Time is still 0: should be in the cache.
     assertEquals(val, expiringCache.getElement(key).obj);
     assertFalse(expiringCache.getElement(key).isExpired);
+    assertEquals(0, expiringCache.getElement(key).staleness);
 
     // Time = 300 seconds: out of cache.
     timeSource.setCurrentTimeMillis(300 * 1000);
     assertEquals(val, expiringCache.getElement(key).obj);
     assertTrue(expiringCache.getElement(key).isExpired);
+    assertEquals(60 * 1000, expiringCache.getElement(key).staleness);
+  }
+
+  public void testRemovedFromUnderlyingCache() {
+    SoftExpiringCache<String, String> expiringCache = makeSoftExpiringCache();
+    expiringCache.addElement("key1", "val1", 240 * 1000);
+    cache.removeElement("key1");
+    assertNull(expiringCache.getElement("key1"));
   }
 
   public void testMissingValue() {
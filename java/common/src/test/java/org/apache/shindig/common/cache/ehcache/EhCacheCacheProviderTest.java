@@ -20,6 +20,7 @@ package org.apache.shindig.common.cache.ehcache;
 
 import org.apache.shindig.common.cache.Cache;
 import org.apache.shindig.common.cache.CacheProvider;
+import org.apache.shindig.common.cache.Weigher;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -59,4 +60,16 @@ public class EhCacheCacheProviderTest {
     Assert.assertEquals(cache.getCapacity(), cache2.getCapacity());
     Assert.assertEquals(cache.getSize(), cache2.getSize());
   }
+
+  @Test
+  public void weightedCacheUsesConfiguredSize() throws Exception {
+    CacheProvider defaultProvider = new EhCacheCacheProvider(
+        "res://org/apache/shindig/common/cache/ehcache/ehcacheConfig.xml", false, false);
+    Cache<String, String> cache = defaultProvider.createCache("jsBundles", new Weigher<String>() {
+      public int weigh(String value) {
+        return value.length();
+      }
+    });
+    Assert.assertEquals(200, cache.getCapacity());
+  }
 }
@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shindig.common.util;
+
+import junit.framework.TestCase;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests InstrumentedThreadPoolExecutor.
+ */
+public class InstrumentedThreadPoolExecutorTest extends TestCase {
+  private InstrumentedThreadPoolExecutor executor;
+
+  @Override
+  protected void setUp() {
+    executor = new InstrumentedThreadPoolExecutor("test", 1, 0);
+  }
+
+  @Override
+  protected void tearDown() {
+    executor.shutdownNow();
+  }
+
+  public void testFullPoolRunsTaskInSubmitter() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    executor.execute(new Runnable() {
+      public void run() {
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          // Finish
+        }
+      }
+    });
+
+    final Thread[] ranIn = new Thread[1];
+    executor.execute(new Runnable() {
+      public void run() {
+        ranIn[0] = Thread.currentThread();
+      }
+    });
+
+    assertSame(Thread.currentThread(), ranIn[0]);
+    assertEquals(1, executor.getRejectedCount());
+
+    release.countDown();
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    assertEquals(2, executor.getFinishedCount());
+    assertEquals(0, executor.getQueueDepth());
+  }
+
+  public void testFullPoolRejectsWithoutCallerRuns() throws Exception {
+    executor.shutdownNow();
+    executor = new InstrumentedThreadPoolExecutor("test", 1, 0, false);
+    final CountDownLatch release = new CountDownLatch(1);
+    executor.execute(new Runnable() {
+      public void run() {
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          // Finish
+        }
+      }
+    });
+
+    try {
+      executor.execute(new Runnable() {
+        public void run() {
+          fail("Ran although the pool was full");
+        }
+      });
+      fail("Should have been rejected");
+    } catch (RejectedExecutionException e) {
+      // good
+    }
+    assertEquals(1, executor.getRejectedCount());
+    release.countDown();
+  }
+
+  public void testRejectsAfterShutdown() {
+    executor.shutdown();
+    try {
+      executor.execute(new Runnable() {
+        public void run() {
+          fail("Ran after shutdown");
+        }
+      });
+      fail("Should have been rejected");
+    } catch (RejectedExecutionException e) {
+      // good
+    }
+  }
+
+  public void testThreadsNamedAfterPool() throws Exception {
+    final String[] name = new String[1];
+    executor.submit(new Runnable() {
+      public void run() {
+        name[0] = Thread.currentThread().getName();
+      }
+    }).get();
+
+    assertEquals("shindig-test-1", name[0]);
+  }
+
+  public void testStatisticsPublished() throws Exception {
+    executor.execute(new Runnable() {
+      public void run() {}
+    });
+    executor.shutdown();
+    executor.awaitTermination(5, TimeUnit.SECONDS);
+
+    MBeanRegistry.register("Executor", "test", executor);
+    Object finished = ManagementFactory.getPlatformMBeanServer().getAttribute(
+        MBeanRegistry.getObjectName("Executor", "test"), "FinishedCount");
+    assertEquals(1L, finished);
+  }
+}
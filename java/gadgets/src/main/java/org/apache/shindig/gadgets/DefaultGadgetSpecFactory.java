@@ -21,7 +21,9 @@ package org.apache.shindig.gadgets;
 import org.apache.shindig.common.ContainerConfig;
 import org.apache.shindig.common.cache.Cache;
 import org.apache.shindig.common.cache.CacheProvider;
+import org.apache.shindig.common.cache.SingleFlight;
 import org.apache.shindig.common.cache.SoftExpiringCache;
+import org.apache.shindig.common.cache.SoftExpiringCache.TimestampedValue;
 import org.apache.shindig.common.uri.Uri;
 import org.apache.shindig.common.util.Check;
 import org.apache.shindig.gadgets.http.HttpFetcher;
@@ -34,6 +36,9 @@ import com.google.inject.Singleton;
 import com.google.inject.name.Named;
 
 import java.net.URI;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.logging.Logger;
 
 /**
@@ -50,18 +55,32 @@ public class DefaultGadgetSpecFactory implements GadgetSpecFactory {
 
   private final HttpFetcher fetcher;
   private final SoftExpiringCache<Uri, GadgetSpec> cache;
+  private final SingleFlight<Uri, GadgetSpec> fetches = new SingleFlight<Uri, GadgetSpec>();
   private final long refresh;
+  private Executor refreshExecutor;
+  private long maxStaleness;
 
   @Inject
   public DefaultGadgetSpecFactory(HttpFetcher fetcher,
                                   CacheProvider cacheProvider,
                                   @Named("shindig.cache.xml.refreshInterval") long refresh) {
     this.fetcher = fetcher;
-    Cache<Uri, GadgetSpec> baseCache = cacheProvider.createCache(CACHE_NAME);
+    Cache<Uri, TimestampedValue<GadgetSpec>> baseCache = cacheProvider.createCache(CACHE_NAME);
     this.cache = new SoftExpiringCache<Uri, GadgetSpec>(baseCache);
     this.refresh = refresh;
   }
 
+  /**
+   * Enables background refresh. Specs that expired less than maxStaleness ms ago are served as is
+   * while a fresh copy is fetched on the refresh executor.
+   */
+  @Inject(optional = true)
+  public void setBackgroundRefresh(@Named("shindig.cache.refresh") Executor refreshExecutor,
+                                   @Named("shindig.cache.xml.maxStaleness") long maxStaleness) {
+    this.refreshExecutor = refreshExecutor;
+    this.maxStaleness = maxStaleness;
+  }
+
   public GadgetSpec getGadgetSpec(GadgetContext context) throws GadgetException {
     String rawxml = context.getParameter(RAW_GADGETSPEC_XML_PARAM_NAME);
     if (rawxml != null) {
@@ -91,9 +110,13 @@ public class DefaultGadgetSpecFactory implements GadgetSpecFactory {
     SoftExpiringCache.CachedObject<GadgetSpec> cached = cache.getElement(uri);
 
     GadgetSpec spec = null;
-    if (cached == null || cached.isExpired) {
+    if (cached != null && cached.isExpired &&
+        (fetches.isInFlight(uri) || refreshInBackground(uri, container, cached))) {
+      // Another request or a background task is refreshing this spec. Serve the stale copy.
+      spec = cached.obj;
+    } else if (cached == null || cached.isExpired) {
       try {
-        spec = fetchObjectAndCache(uri, container, ignoreCache);
+        spec = coalescedFetch(uri, container);
       } catch (GadgetException e) {
         // Enforce negative caching.
         if (cached != null) {
@@ -118,6 +141,55 @@ public class DefaultGadgetSpecFactory implements GadgetSpecFactory {
     return spec;
   }
 
+  /**
+   * Fetches the spec, sharing the result with any other request fetching the same uri at the same
+   * time so that a popular spec is only fetched and parsed once when it expires.
+   */
+  private GadgetSpec coalescedFetch(final Uri uri, final String container)
+      throws GadgetException {
+    try {
+      return fetches.execute(uri, new Callable<GadgetSpec>() {
+        public GadgetSpec call() throws GadgetException {
+          return fetchObjectAndCache(uri, container, false);
+        }
+      }).get();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof GadgetException) {
+        throw (GadgetException) e.getCause();
+      }
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new GadgetException(GadgetException.Code.INTERNAL_SERVER_ERROR, e.getCause());
+    } catch (InterruptedException e) {
+      throw new GadgetException(GadgetException.Code.INTERNAL_SERVER_ERROR, e);
+    }
+  }
+
+  /**
+   * Schedules a refresh of an expired spec on the refresh executor.
+   *
+   * @return True if the refresh was scheduled and the stale spec may be served in the meantime.
+   */
+  private boolean refreshInBackground(final Uri uri, final String container,
+      final SoftExpiringCache.CachedObject<GadgetSpec> cached) {
+    if (refreshExecutor == null || cached.staleness > maxStaleness) {
+      return false;
+    }
+    return fetches.executeAsync(uri, new Callable<GadgetSpec>() {
+      public GadgetSpec call() {
+        try {
+          return fetchObjectAndCache(uri, container, false);
+        } catch (GadgetException e) {
+          // Enforce negative caching.
+          LOG.info("GadgetSpec refresh failed for " + uri + " - using cached.");
+          cache.addElement(uri, cached.obj, refresh);
+          return cached.obj;
+        }
+      }
+    }, refreshExecutor);
+  }
+
   /**
    * Retrieves a gadget specification from the Internet, processes its views and
    * adds it to the cache.
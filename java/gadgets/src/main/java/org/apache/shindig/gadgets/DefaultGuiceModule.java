@@ -21,9 +21,16 @@ package org.apache.shindig.gadgets;
 import com.google.common.collect.Lists;
 import com.google.inject.AbstractModule;
 import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.google.inject.Key;
 import com.google.inject.Provider;
 import com.google.inject.TypeLiteral;
+import com.google.inject.name.Names;
+import org.apache.shindig.common.util.InstrumentedThreadPoolExecutor;
+import org.apache.shindig.common.util.MBeanRegistry;
+import org.apache.shindig.gadgets.http.HttpFetcher;
 import org.apache.shindig.gadgets.http.HttpResponse;
+import org.apache.shindig.gadgets.http.PooledHttpFetcher;
 import org.apache.shindig.gadgets.parse.ParseModule;
 import org.apache.shindig.gadgets.preload.HttpPreloader;
 import org.apache.shindig.gadgets.preload.PipelinedDataPreloader;
@@ -36,7 +43,7 @@ import org.apache.shindig.gadgets.servlet.CajaContentRewriter;
 import java.util.List;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.logging.Logger;
 
 /**
  * Creates a module to supply all of the Basic* classes
@@ -47,12 +54,24 @@ public class DefaultGuiceModule extends AbstractModule {
   @Override
   protected void configure() {
 
-    ExecutorService service = Executors.newCachedThreadPool();
-    bind(Executor.class).toInstance(service);
-    bind(ExecutorService.class).toInstance(service);
+    // Each kind of work has its own bounded pool, so a slow origin can back up one of them without
+    // starving the others or piling up threads. Work that doesn't fit runs in the submitting
+    // thread instead, except for preloads: those are rejected and fail, so that they stay within
+    // the render's time budget.
+    bind(ExecutorService.class).toProvider(new ExecutorProvider("default", 20, 1000));
+    bind(Executor.class).to(ExecutorService.class);
+    bind(ExecutorService.class).annotatedWith(Names.named("shindig.executor.preload"))
+        .toProvider(new ExecutorProvider("preload", 50, 1000, false));
+    bind(ExecutorService.class).annotatedWith(Names.named("shindig.executor.rpc"))
+        .toProvider(new ExecutorProvider("rpc", 20, 500));
+    // Background refreshes of stale cache entries.
+    bind(Executor.class).annotatedWith(Names.named("shindig.cache.refresh"))
+        .toProvider(new ExecutorProvider("refresh", 4, 1000));
 
     this.install(new ParseModule());
 
+    bind(HttpFetcher.class).to(PooledHttpFetcher.class);
+
     bind(new TypeLiteral<List<ContentRewriter>>(){}).toProvider(ContentRewritersProvider.class);
     bind(new TypeLiteral<List<Preloader>>(){}).toProvider(PreloaderProvider.class);
 
@@ -90,4 +109,69 @@ public class DefaultGuiceModule extends AbstractModule {
       return preloaders;
     }
   }
+
+  /**
+   * Creates a thread pool of the given name, sized by the shindig.executor.<name>.threads and
+   * shindig.executor.<name>.queue properties when they are set. The pools are
+   * {@link InstrumentedThreadPoolExecutor}s, whose queue depth and task latency are published
+   * through JMX as org.apache.shindig:type=Executor,name=<name> when shindig.jmx.enabled is set.
+   */
+  private static class ExecutorProvider implements Provider<ExecutorService> {
+    private static final Logger LOG = Logger.getLogger(ExecutorProvider.class.getName());
+
+    private final String name;
+    private final int defaultThreads;
+    private final int defaultQueueSize;
+    private final boolean callerRuns;
+    private Injector injector;
+    private ExecutorService executor;
+
+    public ExecutorProvider(String name, int defaultThreads, int defaultQueueSize) {
+      this(name, defaultThreads, defaultQueueSize, true);
+    }
+
+    public ExecutorProvider(String name, int defaultThreads, int defaultQueueSize,
+        boolean callerRuns) {
+      this.name = name;
+      this.defaultThreads = defaultThreads;
+      this.defaultQueueSize = defaultQueueSize;
+      this.callerRuns = callerRuns;
+    }
+
+    @Inject
+    public void setInjector(Injector injector) {
+      this.injector = injector;
+    }
+
+    public synchronized ExecutorService get() {
+      if (executor == null) {
+        executor = new InstrumentedThreadPoolExecutor(name,
+            getSetting("threads", defaultThreads), getSetting("queue", defaultQueueSize),
+            callerRuns);
+        if (isJmxEnabled()) {
+          MBeanRegistry.register("Executor", name, executor);
+        }
+      }
+      return executor;
+    }
+
+    private boolean isJmxEnabled() {
+      Key<String> key = Key.get(String.class, Names.named("shindig.jmx.enabled"));
+      return injector != null && injector.getBinding(key) != null &&
+          Boolean.parseBoolean(injector.getInstance(key));
+    }
+
+    private int getSetting(String setting, int defaultValue) {
+      Key<String> key = Key.get(String.class,
+          Names.named("shindig.executor." + name + '.' + setting));
+      if (injector != null && injector.getBinding(key) != null) {
+        try {
+          return Integer.parseInt(injector.getInstance(key));
+        } catch (NumberFormatException e) {
+          LOG.warning("Invalid " + setting + " configured for executor " + name);
+        }
+      }
+      return defaultValue;
+    }
+  }
 }
@@ -20,8 +20,10 @@ package org.apache.shindig.gadgets;
 
 import org.apache.shindig.common.cache.Cache;
 import org.apache.shindig.common.cache.CacheProvider;
+import org.apache.shindig.common.cache.SingleFlight;
 import org.apache.shindig.common.cache.SoftExpiringCache;
 import org.apache.shindig.common.cache.SoftExpiringCache.CachedObject;
+import org.apache.shindig.common.cache.SoftExpiringCache.TimestampedValue;
 import org.apache.shindig.common.uri.Uri;
 import org.apache.shindig.gadgets.http.HttpFetcher;
 import org.apache.shindig.gadgets.http.HttpRequest;
@@ -35,6 +37,9 @@ import com.google.inject.Singleton;
 import com.google.inject.name.Named;
 
 import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.logging.Logger;
 
 /**
@@ -50,18 +55,34 @@ public class DefaultMessageBundleFactory implements MessageBundleFactory {
   static final Logger LOG = Logger.getLogger(DefaultMessageBundleFactory.class.getName());
   private final HttpFetcher fetcher;
   final SoftExpiringCache<String, MessageBundle> cache;
+  private final SingleFlight<String, MessageBundle> fetches
+      = new SingleFlight<String, MessageBundle>();
   private final long refresh;
+  private Executor refreshExecutor;
+  private long maxStaleness;
 
   @Inject
   public DefaultMessageBundleFactory(HttpFetcher fetcher,
                                      CacheProvider cacheProvider,
                                      @Named("shindig.cache.xml.refreshInterval") long refresh) {
     this.fetcher = fetcher;
-    Cache<String, MessageBundle> baseCache = cacheProvider.createCache(CACHE_NAME);
+    Cache<String, TimestampedValue<MessageBundle>> baseCache
+        = cacheProvider.createCache(CACHE_NAME);
     this.cache = new SoftExpiringCache<String, MessageBundle>(baseCache);
     this.refresh = refresh;
   }
 
+  /**
+   * Enables background refresh. Bundles that expired less than maxStaleness ms ago are served as
+   * is while a fresh copy is fetched on the refresh executor.
+   */
+  @Inject(optional = true)
+  public void setBackgroundRefresh(@Named("shindig.cache.refresh") Executor refreshExecutor,
+                                   @Named("shindig.cache.xml.maxStaleness") long maxStaleness) {
+    this.refreshExecutor = refreshExecutor;
+    this.maxStaleness = maxStaleness;
+  }
+
   public MessageBundle getBundle(GadgetSpec spec, Locale locale, boolean ignoreCache)
       throws GadgetException {
 
@@ -73,9 +94,13 @@ public class DefaultMessageBundleFactory implements MessageBundleFactory {
     CachedObject<MessageBundle> cached = cache.getElement(key);
 
     MessageBundle bundle;
-    if (cached == null || cached.isExpired) {
+    if (cached != null && cached.isExpired &&
+        (fetches.isInFlight(key) || refreshInBackground(key, spec, locale, cached))) {
+      // Another request or a background task is refreshing this bundle. Serve the stale copy.
+      bundle = cached.obj;
+    } else if (cached == null || cached.isExpired) {
       try {
-        bundle = getNestedBundle(spec, locale, ignoreCache);
+        bundle = coalescedFetch(key, spec, locale);
       } catch (GadgetException e) {
         // Enforce negative caching.
         if (cached != null) {
@@ -95,6 +120,57 @@ public class DefaultMessageBundleFactory implements MessageBundleFactory {
     return bundle;
   }
 
+  /**
+   * Fetches the bundle, sharing the result with any other request fetching the same bundle at the
+   * same time.
+   */
+  private MessageBundle coalescedFetch(String key, final GadgetSpec spec, final Locale locale)
+      throws GadgetException {
+    try {
+      return fetches.execute(key, new Callable<MessageBundle>() {
+        public MessageBundle call() throws GadgetException {
+          return getNestedBundle(spec, locale, false);
+        }
+      }).get();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof GadgetException) {
+        throw (GadgetException) e.getCause();
+      }
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new GadgetException(GadgetException.Code.INTERNAL_SERVER_ERROR, e.getCause());
+    } catch (InterruptedException e) {
+      throw new GadgetException(GadgetException.Code.INTERNAL_SERVER_ERROR, e);
+    }
+  }
+
+  /**
+   * Schedules a refresh of an expired bundle on the refresh executor.
+   *
+   * @return True if the refresh was scheduled and the stale bundle may be served in the meantime.
+   */
+  private boolean refreshInBackground(final String key, final GadgetSpec spec,
+      final Locale locale, final CachedObject<MessageBundle> cached) {
+    if (refreshExecutor == null || cached.staleness > maxStaleness) {
+      return false;
+    }
+    return fetches.executeAsync(key, new Callable<MessageBundle>() {
+      public MessageBundle call() {
+        MessageBundle bundle;
+        try {
+          bundle = getNestedBundle(spec, locale, false);
+        } catch (GadgetException e) {
+          // Enforce negative caching.
+          LOG.info("MessageBundle refresh failed for " + key + " - using cached.");
+          bundle = cached.obj;
+        }
+        cache.addElement(key, bundle, refresh);
+        return bundle;
+      }
+    }, refreshExecutor);
+  }
+
   private MessageBundle getNestedBundle(GadgetSpec spec, Locale locale, boolean ignoreCache)
       throws GadgetException {
     MessageBundle parent = getParentBundle(spec, locale, ignoreCache);
@@ -51,7 +51,9 @@ public class GadgetFeatureRegistry {
   private final Map<String, GadgetFeature> features;
   private final Map<String, GadgetFeature> core;
 
-  // Caches the transitive dependencies to enable faster lookups.
+  // Caches the transitive dependencies of sets of registered features, in dependency order.
+  // Unregistered features are left out of the keys, so the cache only grows with the combinations
+  // of registered features that are actually requested.
   final Map<Set<String>, Collection<GadgetFeature>> cache = Maps.newConcurrentHashMap();
 
   private boolean graphComplete = false;
@@ -138,29 +140,36 @@ public class GadgetFeatureRegistry {
       neededSet = core.keySet();
     } else {
       neededSet = ImmutableSet.copyOf(needed);
+      List<String> missing = null;
+      for (String feature : neededSet) {
+        if (!features.containsKey(feature)) {
+          if (missing == null) {
+            missing = Lists.newArrayList();
+          }
+          missing.add(feature);
+        }
+      }
+      if (missing != null) {
+        if (unsupported != null) {
+          unsupported.addAll(missing);
+        }
+        // Missing features don't add anything, so they are resolved like the rest on their own.
+        Set<String> known = Sets.newLinkedHashSet(neededSet);
+        known.removeAll(missing);
+        neededSet = ImmutableSet.copyOf(known);
+      }
     }
 
-    // We use the cache only for situations where all needed are available.
-    // if any are missing, the result won't be cached.
     Collection<GadgetFeature> libCache = cache.get(neededSet);
     if (libCache != null) {
       return libCache;
     }
-    List<GadgetFeature> ret = Lists.newLinkedList();
+    List<GadgetFeature> ret = Lists.newArrayList();
     populateDependencies(neededSet, ret);
-    // Fill in anything that was optional but missing. These won't be cached.
-    if (unsupported != null) {
-      for (String feature : neededSet) {
-        if (!features.containsKey(feature)) {
-          unsupported.add(feature);
-        }
-      }
-    }
-    if (unsupported == null || unsupported.isEmpty()) {
-      cache.put(neededSet, Collections.unmodifiableList(ret));
-      logger.info("Added to cache. Size is now: " + cache.size());
-    }
-    return ret;
+    libCache = Collections.unmodifiableList(ret);
+    cache.put(neededSet, libCache);
+    logger.info("Added to cache. Size is now: " + cache.size());
+    return libCache;
   }
 
   /**
@@ -39,6 +39,13 @@ public abstract class AbstractHttpCache implements HttpCache {
     return null;
   }
 
+  public HttpResponse getStaleResponse(HttpCacheKey key, HttpRequest request) {
+    if (key.isCacheable()) {
+      return getResponseImpl(key.toString());
+    }
+    return null;
+  }
+
   public HttpResponse addResponse(HttpCacheKey key, HttpRequest request, HttpResponse response) {
     if (key.isCacheable() && response != null) {
       // !!! Note that we only rewrite cacheable content. Move this call above the if
@@ -57,9 +64,7 @@ public abstract class AbstractHttpCache implements HttpCache {
   }
 
   public HttpResponse removeResponse(HttpCacheKey key) {
-    String keyString = key.toString();
-    HttpResponse response = getResponseImpl(keyString);
-    removeResponseImpl(keyString);
+    HttpResponse response = removeResponseImpl(key.toString());
     if (responseStillUsable(response)) {
       return response;
     }
@@ -17,6 +17,7 @@
  */
 package org.apache.shindig.gadgets.http;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Maps;
 import com.google.inject.Inject;
 import com.google.inject.Provider;
@@ -26,10 +27,13 @@ import com.google.inject.name.Named;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.ArrayUtils;
 import org.apache.commons.lang.StringUtils;
+import org.apache.shindig.common.util.DateUtil;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.Proxy;
 import java.net.URL;
@@ -45,24 +49,32 @@ import java.util.zip.InflaterInputStream;
  * annotate it as a Singleton to resolve Guice injection limitations.
  */
 @Singleton
-public class BasicHttpFetcher implements HttpFetcher {
+public class BasicHttpFetcher implements StreamingHttpFetcher {
   private static final int CONNECT_TIMEOUT_MS = 5000;
   private static final int DEFAULT_MAX_OBJECT_SIZE = 1024 * 1024;
 
+  // Headers of a 304 response that replace those of the cached response being revalidated.
+  private static final List<String> REVALIDATED_HEADERS = ImmutableList.of(
+      "Date", "Cache-Control", "Expires", "Pragma", "ETag", "Last-Modified");
+
   private final HttpCache cache;
+  private final int maxObjSize;
   private Provider<Proxy> proxyProvider;
+  private int connectTimeoutMs = CONNECT_TIMEOUT_MS;
+  private int readTimeoutMs;
 
   /**
    * Creates a new fetcher for fetching HTTP objects.  Not really suitable
-   * for production use.  Someone should probably go and implement maxObjSize,
-   * for one thing.  Use of an HTTP proxy for security is also necessary
+   * for production use.  Use of an HTTP proxy for security is necessary
    * for production deployment.
    *
-   * @param maxObjSize Maximum size, in bytes, of object to fetch.  Except this
-   * isn't actually implemented.
+   * @param maxObjSize Maximum size, in bytes, of object to fetch, after decompression. Larger
+   * responses are abandoned and replaced with {@link HttpResponse#tooLarge()}, unless they are
+   * being streamed, in which case they are passed on but not cached.
    */
   public BasicHttpFetcher(HttpCache cache, int maxObjSize) {
     this.cache = cache;
+    this.maxObjSize = maxObjSize;
   }
 
   /**
@@ -78,6 +90,15 @@ public class BasicHttpFetcher implements HttpFetcher {
     this.proxyProvider = proxyProvider;
   }
 
+  /**
+   * @param connectTimeoutMs Maximum time to wait for a connection to be established.
+   * @param readTimeoutMs Maximum time to wait for data once connected. 0 waits indefinitely.
+   */
+  public void setTimeouts(int connectTimeoutMs, int readTimeoutMs) {
+    this.connectTimeoutMs = connectTimeoutMs;
+    this.readTimeoutMs = readTimeoutMs;
+  }
+
   /**
    * Initializes the connection.
    *
@@ -89,7 +110,8 @@ public class BasicHttpFetcher implements HttpFetcher {
     URL url = new URL(request.getUri().toString());
     HttpURLConnection fetcher = (HttpURLConnection) ( proxyProvider == null ?
         url.openConnection() : url.openConnection(proxyProvider.get()));
-    fetcher.setConnectTimeout(CONNECT_TIMEOUT_MS);
+    fetcher.setConnectTimeout(connectTimeoutMs);
+    fetcher.setReadTimeout(readTimeoutMs);
     fetcher.setRequestProperty("Accept-Encoding", "gzip, deflate");
     fetcher.setInstanceFollowRedirects(request.getFollowRedirects());
     for (Map.Entry<String, List<String>> entry : request.getHeaders().entrySet()) {
@@ -101,10 +123,12 @@ public class BasicHttpFetcher implements HttpFetcher {
 
   /**
    * @param fetcher
+   * @param sink Where to stream the body, or null to buffer it.
    * @return A HttpResponse object made by consuming the response of the
    *     given HttpURLConnection.
    */
-  private HttpResponse makeResponse(HttpURLConnection fetcher) throws IOException {
+  private HttpResponse makeResponse(HttpURLConnection fetcher, BodySink sink)
+      throws IOException {
     Map<String, List<String>> headers = Maps.newHashMap(fetcher.getHeaderFields());
     // The first header is always null here to provide the response body.
     headers.remove(null);
@@ -127,46 +151,186 @@ public class BasicHttpFetcher implements HttpFetcher {
     }
 
     String encoding = fetcher.getContentEncoding();
-    // Create the appropriate stream wrapper based on the encoding type.
-    InputStream is = null;
-    if (encoding == null) {
-      is = baseIs;
-    } else if (encoding.equalsIgnoreCase("gzip")) {
-      is = new GZIPInputStream(baseIs);
-    } else if (encoding.equalsIgnoreCase("deflate")) {
-      Inflater inflater = new Inflater(true);
-      is = new InflaterInputStream(baseIs, inflater);
-    }
-
-    byte[] body = IOUtils.toByteArray(is);
-    return new HttpResponseBuilder()
+    HttpResponseBuilder builder = new HttpResponseBuilder()
         .setHttpStatusCode(responseCode)
-        .setResponse(body)
-        .addAllHeaders(headers)
-        .create();
+        .addAllHeaders(headers);
+
+    // Reading the stream to the end and closing it lets the connection be kept alive and reused.
+    InputStream is = baseIs;
+    try {
+      // Create the appropriate stream wrapper based on the encoding type. Other encodings, such
+      // as identity, are passed through as they are.
+      if ("gzip".equalsIgnoreCase(encoding)) {
+        is = new GZIPInputStream(baseIs);
+      } else if ("deflate".equalsIgnoreCase(encoding)) {
+        Inflater inflater = new Inflater(true);
+        is = new InflaterInputStream(baseIs, inflater);
+      }
+
+      OutputStream out = null;
+      if (sink != null && responseCode != HttpResponse.SC_NOT_MODIFIED) {
+        out = sink.open(builder.create());
+      }
+      if (out != null) {
+        byte[] body = streamBody(is, out);
+        if (body == null) {
+          throw new ResponseTooLargeException(builder.create());
+        }
+        builder.setResponseNoCopy(body);
+      } else {
+        // The Content-Length is only the size of the body if it isn't decompressed here.
+        builder.setResponseNoCopy(readBody(is, is == baseIs ? fetcher.getContentLength() : -1));
+      }
+    } finally {
+      // The wrapper closes baseIs too, but baseIs must be closed even if the wrapper fails.
+      IOUtils.closeQuietly(is);
+      baseIs.close();
+    }
+    return builder.create();
+  }
+
+  /**
+   * Copies the whole stream to out as it arrives, keeping a copy of the body as long as it fits
+   * under maxObjSize.
+   *
+   * @return The body, or null if it was too large to keep.
+   */
+  private byte[] streamBody(InputStream is, OutputStream out) throws IOException {
+    ByteArrayOutputStream kept = new ByteArrayOutputStream();
+    byte[] buffer = new byte[8192];
+    int read;
+    while ((read = is.read(buffer)) != -1) {
+      out.write(buffer, 0, read);
+      out.flush();
+      if (kept != null) {
+        if (kept.size() + read > maxObjSize) {
+          kept = null;
+        } else {
+          kept.write(buffer, 0, read);
+        }
+      }
+    }
+    return kept == null ? null : kept.toByteArray();
+  }
+
+  /**
+   * Reads the whole stream, giving up as soon as more than maxObjSize bytes have been read.
+   *
+   * @param expectedLength The expected length of the body, or -1 if not known.
+   */
+  private byte[] readBody(InputStream is, int expectedLength) throws IOException {
+    if (expectedLength > maxObjSize) {
+      throw new ResponseTooLargeException();
+    }
+    byte[] body = new byte[expectedLength >= 0 ? expectedLength : Math.min(8192, maxObjSize)];
+    int length = 0;
+    while (true) {
+      if (length == body.length) {
+        // Only grow the buffer if there is more to read.
+        int next = is.read();
+        if (next == -1) {
+          break;
+        }
+        if (length >= maxObjSize) {
+          throw new ResponseTooLargeException();
+        }
+        byte[] grown = new byte[(int) Math.min(Math.max(length * 2L, 1024L), maxObjSize)];
+        System.arraycopy(body, 0, grown, 0, length);
+        body = grown;
+        body[length++] = (byte) next;
+        continue;
+      }
+      int read = is.read(body, length, body.length - length);
+      if (read == -1) {
+        break;
+      }
+      length += read;
+    }
+    if (length == body.length) {
+      return body;
+    }
+    byte[] trimmed = new byte[length];
+    System.arraycopy(body, 0, trimmed, 0, length);
+    return trimmed;
+  }
+
+  /**
+   * @return True if the stale response is a successful response with a validator, and the request
+   * doesn't carry conditions of its own.
+   */
+  private static boolean canRevalidate(HttpRequest request, HttpResponse stale) {
+    if (request.getHeader("If-None-Match") != null ||
+        request.getHeader("If-Modified-Since") != null) {
+      return false;
+    }
+    return stale.getHttpStatusCode() == HttpResponse.SC_OK &&
+        (stale.getHeader("ETag") != null || stale.getHeader("Last-Modified") != null);
+  }
+
+  /**
+   * Makes the request conditional on the stale response having changed.
+   */
+  private static void addValidators(HttpURLConnection fetcher, HttpResponse stale) {
+    String etag = stale.getHeader("ETag");
+    if (etag != null) {
+      fetcher.setRequestProperty("If-None-Match", etag);
+    }
+    String lastModified = stale.getHeader("Last-Modified");
+    if (lastModified != null) {
+      fetcher.setRequestProperty("If-Modified-Since", lastModified);
+    }
+  }
+
+  /**
+   * @return The stale response with its caching headers updated from a 304 response. The body is
+   * shared rather than copied. A 304 without a Date was still generated now, so the response is
+   * dated now rather than keeping the Date that made it stale.
+   */
+  static HttpResponse revalidate(HttpResponse stale, HttpResponse notModified) {
+    HttpResponseBuilder builder = new HttpResponseBuilder(stale);
+    for (String name : REVALIDATED_HEADERS) {
+      List<String> values = notModified.getHeaders(name);
+      if (!values.isEmpty()) {
+        builder.removeHeader(name);
+        for (String value : values) {
+          builder.addHeader(name, value);
+        }
+      }
+    }
+    if (notModified.getHeader("Date") == null) {
+      builder.setHeader("Date", DateUtil.formatDate(System.currentTimeMillis()));
+    }
+    return builder.create();
   }
 
   /** {@inheritDoc} */
   public HttpResponse fetch(HttpRequest request) {
+    return fetch(request, null);
+  }
+
+  /** {@inheritDoc} */
+  public HttpResponse fetch(HttpRequest request, BodySink sink) {
     HttpCacheKey cacheKey = new HttpCacheKey(request);
     HttpResponse response = cache.getResponse(cacheKey, request);
     if (response != null) {
       return response;
     }
+    HttpResponse stale = cache.getStaleResponse(cacheKey, request);
+    if (stale != null && !canRevalidate(request, stale)) {
+      stale = null;
+    }
     try {
-      HttpURLConnection fetcher = getConnection(request);
-      fetcher.setRequestMethod(request.getMethod());
-      if (!"GET".equals(request.getMethod())) {
-        fetcher.setUseCaches(false);
-      }
-      if (request.getPostBodyLength() > 0) {
-        fetcher.setDoOutput(true);
-        fetcher.setRequestProperty("Content-Length",
-            String.valueOf(request.getPostBodyLength()));
-        IOUtils.copy(request.getPostBody(), fetcher.getOutputStream());
+      response = fetchFromOrigin(request, stale, sink);
+      if (stale != null && response.getHttpStatusCode() == HttpResponse.SC_NOT_MODIFIED) {
+        response = revalidate(stale, response);
       }
-      response = makeResponse(fetcher);
       return cache.addResponse(cacheKey, request, response);
+    } catch (ResponseTooLargeException e) {
+      if (e.streamed != null) {
+        // The body has been passed on already, it just can't be cached.
+        return e.streamed;
+      }
+      return cache.addResponse(cacheKey, request, HttpResponse.tooLarge());
     } catch (IOException e) {
       if (e instanceof java.net.SocketTimeoutException ||
           e instanceof java.net.SocketException) {
@@ -175,4 +339,47 @@ public class BasicHttpFetcher implements HttpFetcher {
       return HttpResponse.error();
     }
   }
-}
\ No newline at end of file
+
+  /**
+   * Sends the request to the origin server. Subclasses may override this to control access to the
+   * network; cached responses never reach this method.
+   *
+   * @param stale An expired response to revalidate, or null to make an unconditional request.
+   * @param sink Where to stream the body, or null to buffer it.
+   */
+  protected HttpResponse fetchFromOrigin(HttpRequest request, HttpResponse stale, BodySink sink)
+      throws IOException {
+    HttpURLConnection fetcher = getConnection(request);
+    if (stale != null) {
+      addValidators(fetcher, stale);
+    }
+    fetcher.setRequestMethod(request.getMethod());
+    if (!"GET".equals(request.getMethod())) {
+      fetcher.setUseCaches(false);
+    }
+    if (request.getPostBodyLength() > 0) {
+      fetcher.setDoOutput(true);
+      fetcher.setRequestProperty("Content-Length",
+          String.valueOf(request.getPostBodyLength()));
+      IOUtils.copy(request.getPostBody(), fetcher.getOutputStream());
+    }
+    return makeResponse(fetcher, sink);
+  }
+
+  /**
+   * Thrown when a response body exceeds the maximum object size.
+   */
+  private static class ResponseTooLargeException extends IOException {
+    // The response, without its body, if the body was streamed before it became too large.
+    final HttpResponse streamed;
+
+    public ResponseTooLargeException() {
+      this(null);
+    }
+
+    public ResponseTooLargeException(HttpResponse streamed) {
+      super("Response exceeds the maximum object size");
+      this.streamed = streamed;
+    }
+  }
+}
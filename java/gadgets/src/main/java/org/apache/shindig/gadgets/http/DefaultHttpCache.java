@@ -19,21 +19,40 @@ package org.apache.shindig.gadgets.http;
 
 import org.apache.shindig.common.cache.Cache;
 import org.apache.shindig.common.cache.CacheProvider;
+import org.apache.shindig.common.cache.Weigher;
 
 import com.google.inject.Inject;
 
+import java.util.List;
+import java.util.Map;
+
 /**
  * Simple cache of HttpResponses. It is recommended that this cache be configured with a shared
  * cache rather than a memory only cache.
+ *
+ * The cache is created with a weigher that approximates the memory used by each response, so
+ * providers that support it may limit the cache to a number of bytes rather than entries.
  */
 public class DefaultHttpCache extends AbstractHttpCache {
   public static final String CACHE_NAME = "httpResponses";
 
+  public static final Weigher<HttpResponse> RESPONSE_WEIGHER = new Weigher<HttpResponse>() {
+    public int weigh(HttpResponse response) {
+      int weight = response.getContentLength();
+      for (Map.Entry<String, List<String>> header : response.getHeaders().entrySet()) {
+        for (String value : header.getValue()) {
+          weight += header.getKey().length() + value.length();
+        }
+      }
+      return weight;
+    }
+  };
+
   private final Cache<String, HttpResponse> cache;
 
   @Inject
   public DefaultHttpCache(CacheProvider cacheProvider) {
-    cache = cacheProvider.createCache(CACHE_NAME);
+    cache = cacheProvider.createCache(CACHE_NAME, RESPONSE_WEIGHER);
   }
 
   @Override
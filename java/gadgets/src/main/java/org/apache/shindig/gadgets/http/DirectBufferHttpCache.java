@@ -0,0 +1,195 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shindig.gadgets.http;
+
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An HttpCache that keeps response bodies outside of the Java heap, so that large proxy caches
+ * don't add to garbage collection pauses.
+ *
+ * Bodies are copied into fixed size pages carved out of direct ByteBuffer slabs, which are
+ * allocated once when the cache is created. Status codes, headers and metadata stay on the heap.
+ * The cache is bounded by the number of bytes in its pages rather than by entry count, and the
+ * least recently used entries are evicted to make room for new ones.
+ *
+ * Every hit copies the body back into a new byte array, so the heap only holds bodies of responses
+ * that are in use. To use this cache, bind HttpCache to this class and configure the size with
+ * shindig.cache.http.offHeap.maxBytes.
+ */
+public class DirectBufferHttpCache extends AbstractHttpCache {
+  static final int PAGE_SIZE = 4096;
+  private static final int PAGES_PER_SLAB = (1 << 30) / PAGE_SIZE;
+
+  private final ByteBuffer[] slabs;
+  // Stack of unused page numbers.
+  private final int[] freePages;
+  private int freeCount;
+  private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+  @Inject
+  public DirectBufferHttpCache(@Named("shindig.cache.http.offHeap.maxBytes") long maxBytes) {
+    int pageCount = (int) Math.min(maxBytes / PAGE_SIZE, Integer.MAX_VALUE);
+    int slabCount = (pageCount + PAGES_PER_SLAB - 1) / PAGES_PER_SLAB;
+    slabs = new ByteBuffer[slabCount];
+    for (int i = 0; i < slabCount; ++i) {
+      int pages = Math.min(PAGES_PER_SLAB, pageCount - i * PAGES_PER_SLAB);
+      slabs[i] = ByteBuffer.allocateDirect(pages * PAGE_SIZE);
+    }
+    freePages = new int[pageCount];
+    for (int i = 0; i < pageCount; ++i) {
+      freePages[i] = pageCount - 1 - i;
+    }
+    freeCount = pageCount;
+  }
+
+  @Override
+  protected HttpResponse getResponseImpl(String key) {
+    Entry entry;
+    byte[] body;
+    synchronized (this) {
+      entry = entries.get(key);
+      if (entry == null) {
+        return null;
+      }
+      body = read(entry);
+    }
+    return entry.toResponse(body);
+  }
+
+  @Override
+  protected void addResponseImpl(String key, HttpResponse response) {
+    byte[] body = response.getResponseAsBytes();
+    int pagesNeeded = (body.length + PAGE_SIZE - 1) / PAGE_SIZE;
+    if (pagesNeeded > freePages.length) {
+      // Would never fit.
+      return;
+    }
+    synchronized (this) {
+      Entry previous = entries.remove(key);
+      if (previous != null) {
+        release(previous);
+      }
+      Iterator<Entry> eldest = entries.values().iterator();
+      while (freeCount < pagesNeeded) {
+        release(eldest.next());
+        eldest.remove();
+      }
+      int[] pages = new int[pagesNeeded];
+      for (int i = 0; i < pagesNeeded; ++i) {
+        pages[i] = freePages[--freeCount];
+      }
+      Entry entry = new Entry(response, body.length, pages);
+      write(entry, body);
+      entries.put(key, entry);
+    }
+  }
+
+  @Override
+  protected HttpResponse removeResponseImpl(String key) {
+    Entry entry;
+    byte[] body;
+    synchronized (this) {
+      entry = entries.remove(key);
+      if (entry == null) {
+        return null;
+      }
+      body = read(entry);
+      release(entry);
+    }
+    return entry.toResponse(body);
+  }
+
+  /**
+   * @return The number of bytes of direct memory allocated for bodies.
+   */
+  public long getCapacity() {
+    return (long) freePages.length * PAGE_SIZE;
+  }
+
+  /**
+   * @return The number of bytes of direct memory currently holding bodies, including unused space
+   * at the end of each entry's last page.
+   */
+  public synchronized long getUsedBytes() {
+    return (long) (freePages.length - freeCount) * PAGE_SIZE;
+  }
+
+  private void release(Entry entry) {
+    for (int page : entry.pages) {
+      freePages[freeCount++] = page;
+    }
+  }
+
+  // Only called with the lock held, so the slab positions can't change underneath us.
+  private void write(Entry entry, byte[] body) {
+    int offset = 0;
+    for (int page : entry.pages) {
+      int length = Math.min(PAGE_SIZE, body.length - offset);
+      ByteBuffer slab = slabs[page / PAGES_PER_SLAB];
+      slab.position((page % PAGES_PER_SLAB) * PAGE_SIZE);
+      slab.put(body, offset, length);
+      offset += length;
+    }
+  }
+
+  private byte[] read(Entry entry) {
+    byte[] body = new byte[entry.length];
+    int offset = 0;
+    for (int page : entry.pages) {
+      int length = Math.min(PAGE_SIZE, body.length - offset);
+      ByteBuffer slab = slabs[page / PAGES_PER_SLAB];
+      slab.position((page % PAGES_PER_SLAB) * PAGE_SIZE);
+      slab.get(body, offset, length);
+      offset += length;
+    }
+    return body;
+  }
+
+  private static class Entry {
+    private final int httpStatusCode;
+    private final Map<String, List<String>> headers;
+    private final Map<String, String> metadata;
+    private final int length;
+    private final int[] pages;
+
+    Entry(HttpResponse response, int length, int[] pages) {
+      this.httpStatusCode = response.getHttpStatusCode();
+      this.headers = response.getHeaders();
+      this.metadata = response.getMetadata();
+      this.length = length;
+      this.pages = pages;
+    }
+
+    HttpResponse toResponse(byte[] body) {
+      return new HttpResponseBuilder()
+          .setHttpStatusCode(httpStatusCode)
+          .addAllHeaders(headers)
+          .setMetadata(metadata)
+          .setResponseNoCopy(body)
+          .create();
+    }
+  }
+}
@@ -35,4 +35,12 @@ public interface HttpCache {
 
   public HttpResponse removeResponse(HttpCacheKey key);
 
+  /**
+   * Retrieves a cached response even if it has expired, so that it can be revalidated with the
+   * origin server instead of being fetched again in full.
+   *
+   * @return The cached response, or null if there is none or the key is not cacheable.
+   */
+  public HttpResponse getStaleResponse(HttpCacheKey key, HttpRequest request);
+
 }
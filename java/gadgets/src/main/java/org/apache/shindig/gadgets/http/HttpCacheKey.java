@@ -14,12 +14,9 @@
 
 package org.apache.shindig.gadgets.http;
 
-import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
-import org.json.JSONArray;
+import org.json.JSONObject;
 
-import java.util.Collections;
-import java.util.List;
 import java.util.Map;
 
 /**
@@ -28,11 +25,15 @@ import java.util.Map;
  * The key is made up of name/value pairs.  By default only the HTTP method
  * and URL are included in the cache key.  Use the set() method to add
  * additional data to the cache key.
+ *
+ * The string form of the key is computed once and reused until the key is modified, so a key may
+ * be used for several cache operations without being serialized each time.
  */
 public class HttpCacheKey {
 
-  private Map<String, String> data;
+  private final Map<String, String> data;
   private boolean cacheable;
+  private String canonical;
 
   /**
    * Create a cache key for the specified request.
@@ -40,7 +41,7 @@ public class HttpCacheKey {
    * @param request
    */
   public HttpCacheKey(HttpRequest request) {
-    data = Maps.newHashMap();
+    data = Maps.newTreeMap();
     setCacheable(isCacheable(request));
 
     // In theory we only cache GET, but including the method in the cache key
@@ -55,6 +56,7 @@ public class HttpCacheKey {
    */
   public void set(String key, String value) {
     data.put(key, value);
+    canonical = null;
   }
 
   /**
@@ -62,6 +64,7 @@ public class HttpCacheKey {
    */
   public void remove(String key) {
     data.remove(key);
+    canonical = null;
   }
 
   public void setCacheable(boolean cacheable) {
@@ -84,14 +87,26 @@ public class HttpCacheKey {
    */
   @Override
   public String toString() {
-    List<String> list = Lists.newArrayList();
-    list.addAll(data.keySet());
-    Collections.sort(list);
-    JSONArray json = new JSONArray();
-    for (String key : list) {
-      json.put(Collections.singletonMap(key, data.get(key)));
+    if (canonical == null) {
+      // Equivalent to a JSON array of single entry objects, sorted by name.
+      StringBuilder buf = new StringBuilder(data.size() * 32);
+      buf.append('[');
+      for (Map.Entry<String, String> entry : data.entrySet()) {
+        if (buf.length() > 1) {
+          buf.append(',');
+        }
+        buf.append('{').append(JSONObject.quote(entry.getKey())).append(':');
+        if (entry.getValue() == null) {
+          buf.append("null");
+        } else {
+          buf.append(JSONObject.quote(entry.getValue()));
+        }
+        buf.append('}');
+      }
+      buf.append(']');
+      canonical = buf.toString();
     }
-    return json.toString();
+    return canonical;
   }
 
   private boolean isCacheable(HttpRequest request) {
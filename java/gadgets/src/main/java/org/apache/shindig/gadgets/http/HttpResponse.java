@@ -31,8 +31,12 @@ import java.io.ByteArrayInputStream;
 import java.io.Externalizable;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.io.PushbackReader;
+import java.io.Reader;
+import java.io.StringReader;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.Arrays;
@@ -185,6 +189,13 @@ public final class HttpResponse implements Externalizable {
     return new HttpResponse(SC_GATEWAY_TIMEOUT, "");
   }
 
+  /**
+   * @return The response used in place of remote responses larger than the fetcher allows.
+   */
+  public static HttpResponse tooLarge() {
+    return new HttpResponse(SC_BAD_GATEWAY, "");
+  }
+
   public static HttpResponse notFound() {
     return new HttpResponse(SC_NOT_FOUND, "");
   }
@@ -230,12 +241,7 @@ public final class HttpResponse implements Externalizable {
    */
   public String getResponseAsString() {
     if (responseString == null) {
-      Charset charset = encodingToCharset.get(encoding);
-      if (charset == null) {
-        charset = Charset.forName(encoding);
-        encodingToCharset.put(encoding, charset);
-      }
-      responseString = charset.decode(ByteBuffer.wrap(responseBytes)).toString();
+      responseString = getCharset().decode(ByteBuffer.wrap(responseBytes)).toString();
 
       // Strip BOM if present
       if (responseString.length() > 0 && responseString.codePointAt(0) == 0xFEFF) {
@@ -245,6 +251,40 @@ public final class HttpResponse implements Externalizable {
     return responseString;
   }
 
+  /**
+   * Decodes the response body the same way as {@link #getResponseAsString}, but as it is read,
+   * so that a caller processing the body in one pass never holds a decoded copy of all of it.
+   *
+   * @return A reader of the body as characters.
+   */
+  public Reader getResponseReader() {
+    if (responseString != null) {
+      return new StringReader(responseString);
+    }
+    PushbackReader reader = new PushbackReader(
+        new InputStreamReader(new ByteArrayInputStream(responseBytes), getCharset()));
+    try {
+      // Strip BOM if present
+      int first = reader.read();
+      if (first != -1 && first != 0xFEFF) {
+        reader.unread(first);
+      }
+    } catch (IOException e) {
+      // Not possible when reading from memory.
+      throw new RuntimeException(e);
+    }
+    return reader;
+  }
+
+  private Charset getCharset() {
+    Charset charset = encodingToCharset.get(encoding);
+    if (charset == null) {
+      charset = Charset.forName(encoding);
+      encodingToCharset.put(encoding, charset);
+    }
+    return charset;
+  }
+
   /**
    * @return All headers for this object.
    */
@@ -76,6 +76,15 @@ public class HttpResponseBuilder {
     return this;
   }
 
+  /**
+   * @param responseBytes The response body. Not copied, so the caller must not modify it after
+   * passing it in.
+   */
+  HttpResponseBuilder setResponseNoCopy(byte[] responseBytes) {
+    this.responseBytes = responseBytes == null ? ArrayUtils.EMPTY_BYTE_ARRAY : responseBytes;
+    return this;
+  }
+
   /**
    * @param httpStatusCode The HTTP response status, defined on HttpResponse.
    */
@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shindig.gadgets.http;
+
+import com.google.common.collect.Maps;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An HttpFetcher for production use that limits how many requests may be in flight to the network,
+ * both in total and for each host, and that always uses connect and read timeouts.
+ *
+ * Connections are pooled and kept alive by the JDK's HTTP implementation, which keeps up to
+ * http.maxConnections idle connections per host once responses are fully read. The JDK reads that
+ * system property once, so it should be set on the command line to match
+ * shindig.http.client.maxConnectionsPerHost for every connection allowed by the limit to be reused.
+ *
+ * Per host limits are only tracked while a host has requests in flight, so the number of tracked
+ * hosts is bounded by the number of concurrent requests rather than every host ever fetched.
+ *
+ * A request that can't get a connection slot within the connect timeout fails with a timeout
+ * response, so a slow origin can't tie up every request thread. Cached responses are served
+ * without waiting for a slot.
+ */
+@Singleton
+public class PooledHttpFetcher extends BasicHttpFetcher {
+  static final int DEFAULT_MAX_CONNECTIONS = 200;
+  static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 20;
+  static final int DEFAULT_CONNECT_TIMEOUT_MS = 5000;
+  static final int DEFAULT_READ_TIMEOUT_MS = 15000;
+
+  final Map<String, HostSlots> hostSlots = Maps.newHashMap();
+  private Semaphore totalSlots = new Semaphore(DEFAULT_MAX_CONNECTIONS);
+  private int maxConnectionsPerHost = DEFAULT_MAX_CONNECTIONS_PER_HOST;
+  private int connectTimeoutMs = DEFAULT_CONNECT_TIMEOUT_MS;
+  private int readTimeoutMs = DEFAULT_READ_TIMEOUT_MS;
+
+  @Inject
+  public PooledHttpFetcher(HttpCache cache) {
+    super(cache);
+    setTimeouts(connectTimeoutMs, readTimeoutMs);
+  }
+
+  @Inject(optional = true)
+  public void setMaxConnections(@Named("shindig.http.client.maxConnections") int maxConnections) {
+    totalSlots = new Semaphore(maxConnections);
+  }
+
+  @Inject(optional = true)
+  public void setMaxConnectionsPerHost(
+      @Named("shindig.http.client.maxConnectionsPerHost") int maxConnectionsPerHost) {
+    this.maxConnectionsPerHost = maxConnectionsPerHost;
+  }
+
+  @Inject(optional = true)
+  public void setConnectTimeout(@Named("shindig.http.client.connectTimeoutMs") int timeoutMs) {
+    connectTimeoutMs = timeoutMs;
+    setTimeouts(connectTimeoutMs, readTimeoutMs);
+  }
+
+  @Inject(optional = true)
+  public void setReadTimeout(@Named("shindig.http.client.readTimeoutMs") int timeoutMs) {
+    readTimeoutMs = timeoutMs;
+    setTimeouts(connectTimeoutMs, readTimeoutMs);
+  }
+
+  private HostSlots acquireHostSlots(String host) {
+    synchronized (hostSlots) {
+      HostSlots slots = hostSlots.get(host);
+      if (slots == null) {
+        slots = new HostSlots(maxConnectionsPerHost);
+        hostSlots.put(host, slots);
+      }
+      slots.users++;
+      return slots;
+    }
+  }
+
+  private void releaseHostSlots(String host, HostSlots slots) {
+    synchronized (hostSlots) {
+      if (--slots.users == 0) {
+        hostSlots.remove(host);
+      }
+    }
+  }
+
+  @Override
+  protected HttpResponse fetchFromOrigin(HttpRequest request, HttpResponse stale, BodySink sink)
+      throws IOException {
+    String host = request.getUri().getAuthority();
+    Semaphore total = totalSlots;
+    HostSlots slots = acquireHostSlots(host);
+    Semaphore perHost = slots.permits;
+    // Both slots are waited for within one connect timeout.
+    long deadline = System.currentTimeMillis() + connectTimeoutMs;
+    try {
+      if (!perHost.tryAcquire(connectTimeoutMs, TimeUnit.MILLISECONDS)) {
+        throw new SocketTimeoutException("Too many concurrent requests to " + host);
+      }
+      try {
+        long remaining = Math.max(0, deadline - System.currentTimeMillis());
+        if (!total.tryAcquire(remaining, TimeUnit.MILLISECONDS)) {
+          throw new SocketTimeoutException("Too many concurrent requests");
+        }
+        try {
+          return super.fetchFromOrigin(request, stale, sink);
+        } finally {
+          total.release();
+        }
+      } finally {
+        perHost.release();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SocketTimeoutException("Interrupted waiting for a connection to " + host);
+    } finally {
+      releaseHostSlots(host, slots);
+    }
+  }
+
+  /**
+   * The connection slots for one host, with the number of requests using or waiting for them.
+   */
+  static class HostSlots {
+    final Semaphore permits;
+    int users;
+
+    HostSlots(int maxConnections) {
+      permits = new Semaphore(maxConnections);
+    }
+  }
+}
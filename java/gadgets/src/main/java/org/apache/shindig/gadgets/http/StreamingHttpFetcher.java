@@ -0,0 +1,54 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shindig.gadgets.http;
+
+import org.apache.shindig.gadgets.GadgetException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * An HttpFetcher that can pass a response body on as it is read from the network instead of
+ * buffering all of it first.
+ */
+public interface StreamingHttpFetcher extends HttpFetcher {
+
+  /**
+   * Fetch HTTP content, streaming the body to the sink if it asks for it. Cached responses are
+   * returned without consulting the sink.
+   *
+   * @param request The request to fetch.
+   * @param sink Chooses whether the body of a response from the network is streamed.
+   * @return The response. If the body was streamed, it only holds the body if that fit under the
+   *     maximum object size and is otherwise empty and not cached.
+   */
+  HttpResponse fetch(HttpRequest request, BodySink sink) throws GadgetException;
+
+  /**
+   * Receives response bodies as they arrive.
+   */
+  interface BodySink {
+    /**
+     * Called with the status and headers of a response before any of its body is read.
+     *
+     * @param response The response, with an empty body.
+     * @return The stream to write the body to as it arrives, or null to buffer it as usual.
+     */
+    OutputStream open(HttpResponse response) throws IOException;
+  }
+}
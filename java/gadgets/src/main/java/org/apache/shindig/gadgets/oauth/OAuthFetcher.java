@@ -951,6 +951,10 @@ public class OAuthFetcher extends ChainedContentFetcher {
       public HttpResponse removeResponse(HttpCacheKey key) {
         return null;
       }
+
+      public HttpResponse getStaleResponse(HttpCacheKey key, HttpRequest request) {
+        return null;
+      }
     };
     HttpFetcher fetcher = new BasicHttpFetcher(nullCache);
     HttpResponse response = fetcher.fetch(request);
@@ -55,9 +55,21 @@ public abstract class GadgetHtmlParser {
     return normalized.contains("<!DOCTYPE") || normalized.contains("<HTML");
   }
 
+  /**
+   * @return a parsed document owned by the caller, which may freely modify it.
+   */
   public final Document parseDom(String source) throws GadgetException {
+    return getWritableDocument(parseSharedDom(source));
+  }
+
+  /**
+   * Parse the source, returning the document held in the parsed document cache when there is
+   * one. The result may be shared with other threads and must not be modified; use
+   * {@link #getWritableDocument} to obtain a private copy before editing it.
+   */
+  public final Document parseSharedDom(String source) throws GadgetException {
     Document document = null;
-    String key = null;  
+    String key = null;
     // Avoid checksum overhead if we arent caching
     boolean shouldCache = shouldCache();
     if (shouldCache) {
@@ -84,14 +96,23 @@ public abstract class GadgetHtmlParser {
         documentCache.addElement(key, document);
       }
     }
-    if (shouldCache) {
-      Document copy = (Document)document.cloneNode(true);
-      HtmlSerializer.copySerializer(document, copy);
-      return copy;
-    }
     return document;
   }
 
+  /**
+   * @param document A document returned by {@link #parseSharedDom}.
+   * @return the document itself if it is private to the caller, otherwise a deep copy of the
+   *     cached document that the caller may modify.
+   */
+  public final Document getWritableDocument(Document document) {
+    if (!shouldCache()) {
+      return document;
+    }
+    Document copy = (Document)document.cloneNode(true);
+    HtmlSerializer.copySerializer(document, copy);
+    return copy;
+  }
+
   private boolean shouldCache() {
     return documentCache != null && documentCache.getCapacity() != 0;
   }
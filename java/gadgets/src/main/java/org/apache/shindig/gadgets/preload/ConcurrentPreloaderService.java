@@ -18,60 +18,158 @@
 package org.apache.shindig.gadgets.preload;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.inject.Inject;
+import com.google.inject.name.Named;
+import org.apache.shindig.common.util.MBeanRegistry;
 import org.apache.shindig.gadgets.GadgetContext;
 import org.apache.shindig.gadgets.spec.GadgetSpec;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Preloads will be fetched concurrently using the injected ExecutorService, and they can be read
  * lazily using the returned map of futures.
  *
- * The last preloaded object always executes in the current thread to avoid creating unnecessary
- * additional threads when we're blocking the current request anyway.
+ * Each call to preload has a time budget. Preloads still running when it is spent are cancelled
+ * and reported as timed out, and the render goes ahead with the data of the rest. Preloads the
+ * executor has no room for fail straight away rather than running in the current thread, where
+ * the budget couldn't stop them.
+ *
+ * Without a budget, the last preloaded object executes in the current thread to avoid creating
+ * unnecessary additional threads when we're blocking the current request anyway.
+ *
+ * The latency of each preloader is published through JMX as org.apache.shindig:type=Preloader,
+ * unless shindig.jmx.enabled is false.
  */
 public class ConcurrentPreloaderService implements PreloaderService {
   private final ExecutorService executor;
   private final List<? extends Preloader> preloaders;
+  private final ConcurrentMap<String, PreloadStats> stats = Maps.newConcurrentHashMap();
+  private long timeout = 5000;
+  private boolean jmxEnabled;
 
   @Inject
-  public ConcurrentPreloaderService(ExecutorService executor, List<Preloader> preloaders) {
+  public ConcurrentPreloaderService(@Named("shindig.executor.preload")
+      ExecutorService executor, List<Preloader> preloaders) {
     this.executor = executor;
     this.preloaders = preloaders;
   }
 
+  /**
+   * @param timeout Milliseconds that the preloads of a single render may take in total. Zero or
+   *     less waits for every preload to finish.
+   */
+  @Inject(optional = true)
+  public void setTimeout(@Named("shindig.preload.timeoutMs") long timeout) {
+    this.timeout = timeout;
+  }
+
+  @Inject(optional = true)
+  public void setJmxEnabled(@Named("shindig.jmx.enabled") boolean jmxEnabled) {
+    this.jmxEnabled = jmxEnabled;
+  }
+
+  /**
+   * @return The latency of the tasks of each preloader, by preloader class name.
+   */
+  public Map<String, PreloadStats> getStats() {
+    return Collections.unmodifiableMap(stats);
+  }
+
   public Preloads preload(GadgetContext context, GadgetSpec gadget, PreloadPhase phase) {
     if (preloaders.isEmpty()) {
       return new NullPreloads();
     }
 
-    List<Callable<PreloadedData>> tasks = Lists.newArrayList();
+    long deadline = timeout > 0 ? System.currentTimeMillis() + timeout : Long.MAX_VALUE;
+
+    List<PreloadTask> tasks = Lists.newArrayList();
     for (Preloader preloader : preloaders) {
       Collection<Callable<PreloadedData>> taskCollection =
           preloader.createPreloadTasks(context, gadget, phase);
-      tasks.addAll(taskCollection);
+      PreloadStats preloaderStats = getStats(preloader);
+      for (Callable<PreloadedData> task : taskCollection) {
+        tasks.add(new PreloadTask(task, preloaderStats));
+      }
     }
 
-    ConcurrentPreloads preloads = new ConcurrentPreloads();
+    ConcurrentPreloads preloads = new ConcurrentPreloads(deadline);
     int processed = tasks.size();
-    for (Callable<PreloadedData> task : tasks) {
+    for (PreloadTask task : tasks) {
       processed -= 1;
-      if (processed == 0) {
+      if (processed == 0 && deadline == Long.MAX_VALUE) {
         // The last preload fires in the current thread.
         // TODO: for the HTML_RENDER phase, if there's also a proxied fetch, this
         // is counter-productive
-        FutureTask<PreloadedData> futureTask = new FutureTask<PreloadedData>(task);
-        futureTask.run();
-        preloads.add(futureTask);
+        task.run();
       } else {
-        preloads.add(executor.submit(task));
+        try {
+          executor.execute(task);
+        } catch (RejectedExecutionException e) {
+          task.reject(e);
+        }
       }
+      preloads.add(task);
     }
     return preloads;
   }
+
+  private PreloadStats getStats(Preloader preloader) {
+    String name = preloader.getClass().getName();
+    PreloadStats preloaderStats = stats.get(name);
+    if (preloaderStats == null) {
+      PreloadStats created = new PreloadStats();
+      preloaderStats = stats.putIfAbsent(name, created);
+      if (preloaderStats == null) {
+        preloaderStats = created;
+        if (jmxEnabled) {
+          MBeanRegistry.register("Preloader", name, created);
+        }
+      }
+    }
+    return preloaderStats;
+  }
+
+  /**
+   * Records how long its preload took, or that it was cancelled or rejected before it finished.
+   */
+  private static class PreloadTask extends FutureTask<PreloadedData> {
+    private final PreloadStats stats;
+    private volatile long start;
+
+    PreloadTask(Callable<PreloadedData> callable, PreloadStats stats) {
+      super(callable);
+      this.stats = stats;
+    }
+
+    @Override
+    public void run() {
+      start = System.currentTimeMillis();
+      super.run();
+    }
+
+    void reject(RejectedExecutionException e) {
+      setException(new PreloadException("Too many preloads in progress", e));
+    }
+
+    @Override
+    protected void done() {
+      if (isCancelled()) {
+        stats.recordTimedOut();
+      } else if (start == 0) {
+        stats.recordRejected();
+      } else {
+        stats.recordCompleted(System.currentTimeMillis() - start);
+      }
+    }
+  }
 }
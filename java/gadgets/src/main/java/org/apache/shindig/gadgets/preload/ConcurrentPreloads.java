@@ -24,19 +24,35 @@ import com.google.common.collect.Lists;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Preloads data by evaluating Futures for PreloadedData.
  * This class is not, however, thread-safe - tasks must be
  * added and read from a single thread..
+ *
+ * Preloads that haven't completed by the deadline are cancelled and reported as timed out, so
+ * that a slow preload can't hold up the rest of the render.
  */
 class ConcurrentPreloads implements Preloads {
   private final List<Future<PreloadedData>> tasks;
+  private final long deadline;
 
   ConcurrentPreloads() {
+    this(Long.MAX_VALUE);
+  }
+
+  /**
+   * @param deadline The time, in milliseconds since the epoch, after which the data of
+   *     preloads that are still running is no longer waited for.
+   */
+  ConcurrentPreloads(long deadline) {
     tasks = Lists.newArrayList();
+    this.deadline = deadline;
   }
 
   /**
@@ -62,9 +78,19 @@ class ConcurrentPreloads implements Preloads {
    */
   private PreloadedData getPreloadedData(Future<PreloadedData> preloadedDataFuture) {
     try {
-     return preloadedDataFuture.get();
+      if (deadline == Long.MAX_VALUE) {
+        return preloadedDataFuture.get();
+      }
+      long remaining = Math.max(0, deadline - System.currentTimeMillis());
+      return preloadedDataFuture.get(remaining, TimeUnit.MILLISECONDS);
     } catch (ExecutionException ee) {
       return new FailedPreload(ee.getCause());
+    } catch (TimeoutException te) {
+      preloadedDataFuture.cancel(true);
+      return new FailedPreload(new PreloadException("Preload timed out"));
+    } catch (CancellationException ce) {
+      // Timed out when the data was read before.
+      return new FailedPreload(new PreloadException("Preload timed out"));
     } catch (InterruptedException ie) {
       // Do NOT Propagate the interrupt
       throw new RuntimeException("Preloading was interrupted by thread termination", ie);
@@ -0,0 +1,85 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shindig.gadgets.preload;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency of the preload tasks created by a single Preloader, and how many of them timed out.
+ */
+public class PreloadStats implements PreloadStatsMBean {
+  private final AtomicLong completed = new AtomicLong();
+  private final AtomicLong timedOut = new AtomicLong();
+  private final AtomicLong rejected = new AtomicLong();
+  private final AtomicLong totalMillis = new AtomicLong();
+  private final AtomicLong maxMillis = new AtomicLong();
+
+  void recordCompleted(long millis) {
+    completed.incrementAndGet();
+    totalMillis.addAndGet(millis);
+    long max = maxMillis.get();
+    while (millis > max && !maxMillis.compareAndSet(max, millis)) {
+      max = maxMillis.get();
+    }
+  }
+
+  void recordTimedOut() {
+    timedOut.incrementAndGet();
+  }
+
+  void recordRejected() {
+    rejected.incrementAndGet();
+  }
+
+  /**
+   * @return The number of tasks that ran to completion, successfully or not.
+   */
+  public long getCompletedCount() {
+    return completed.get();
+  }
+
+  /**
+   * @return The number of tasks that were cancelled because the render deadline passed.
+   */
+  public long getTimedOutCount() {
+    return timedOut.get();
+  }
+
+  /**
+   * @return The number of tasks that never ran because the preload executor was full.
+   */
+  public long getRejectedCount() {
+    return rejected.get();
+  }
+
+  public long getAverageMillis() {
+    long count = completed.get();
+    return count == 0 ? 0 : totalMillis.get() / count;
+  }
+
+  public long getMaxMillis() {
+    return maxMillis.get();
+  }
+
+  @Override
+  public String toString() {
+    return "completed=" + getCompletedCount() + ", timedOut=" + getTimedOutCount() +
+        ", rejected=" + getRejectedCount() +
+        ", avgMillis=" + getAverageMillis() + ", maxMillis=" + getMaxMillis();
+  }
+}
@@ -26,11 +26,15 @@ import com.google.inject.Inject;
 import org.apache.shindig.auth.SecurityToken;
 import org.apache.shindig.common.ContainerConfig;
 import org.apache.shindig.common.JsonSerializer;
+import org.apache.shindig.common.cache.Cache;
+import org.apache.shindig.common.cache.CacheProvider;
 import org.apache.shindig.common.uri.Uri;
+import org.apache.shindig.common.util.HashUtil;
 import org.apache.shindig.common.xml.DomUtil;
 import org.apache.shindig.gadgets.*;
 import org.apache.shindig.gadgets.http.HttpRequest;
 import org.apache.shindig.gadgets.http.HttpResponse;
+import org.apache.shindig.gadgets.parse.HtmlSerializer;
 import org.apache.shindig.gadgets.preload.PreloadException;
 import org.apache.shindig.gadgets.preload.PreloadedData;
 import org.apache.shindig.gadgets.preload.Preloads;
@@ -41,6 +45,7 @@ import org.apache.shindig.gadgets.spec.*;
 import org.json.JSONObject;
 import org.w3c.dom.*;
 
+import java.io.UnsupportedEncodingException;
 import java.util.*;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -60,6 +65,12 @@ import java.util.logging.Logger;
  * - UserPrefs injection
  * - Javascript injection (including configuration)
  * - html document normalization
+ *
+ * With a cache, the output for given content, spec, view, container, locale and libraries is
+ * compiled into a template the first time it is rendered. Repeat renders only fill in the feature
+ * configuration, message bundle, default user prefs and preloads, without parsing or serializing
+ * the content. The message bundle is filled in rather than compiled in so that it expires with the
+ * bundle cache, and the default prefs because the spec substitutes request values into them.
  */
 public class RenderingContentRewriter implements ContentRewriter {
   private static final Logger LOG = Logger.getLogger(RenderingContentRewriter.class.getName());
@@ -71,11 +82,24 @@ public class RenderingContentRewriter implements ContentRewriter {
       "body{margin: 0px;padding: 0px;background-color:white;}";
   static final String INSERT_BASE_ELEMENT_KEY = "gadgets.insertBaseElement";
   static final String FEATURES_KEY = "gadgets.features";
+  static final String CACHE_NAME = "featureScripts";
+  static final String TEMPLATE_CACHE_NAME = "renderTemplates";
+
+  // Stand-ins for the per-request parts of the output while a template is compiled.
+  static final String CONFIG_HOLE = "__SHINDIG_RENDER_CONFIG__";
+  static final String MESSAGES_HOLE = "__SHINDIG_RENDER_MESSAGES__";
+  static final String PREFS_HOLE = "__SHINDIG_RENDER_PREFS__";
+  static final String PRELOADS_HOLE = "__SHINDIG_RENDER_PRELOADS__";
+
+  // The holes in the order they appear in the output.
+  private static final String[] HOLES = { CONFIG_HOLE, MESSAGES_HOLE, PREFS_HOLE, PRELOADS_HOLE };
 
   private final MessageBundleFactory messageBundleFactory;
   private final ContainerConfig containerConfig;
   private final GadgetFeatureRegistry featureRegistry;
   private final UrlGenerator urlGenerator;
+  private Cache<String, FeatureScripts> featureScriptsCache;
+  private Cache<String, RenderTemplate> templateCache;
 
   /**
    * @param messageBundleFactory Used for injecting message bundles into gadget output.
@@ -91,6 +115,16 @@ public class RenderingContentRewriter implements ContentRewriter {
     this.urlGenerator = urlGenerator;
   }
 
+  /**
+   * @param cacheProvider Provides the caches of feature JavaScript assembled for inlining and of
+   *     compiled templates. Without one, every render works on the parsed document.
+   */
+  @Inject(optional = true)
+  public void setCacheProvider(CacheProvider cacheProvider) {
+    featureScriptsCache = cacheProvider.createCache(CACHE_NAME);
+    templateCache = cacheProvider.createCache(TEMPLATE_CACHE_NAME);
+  }
+
   public RewriterResults rewrite(HttpRequest req, HttpResponse resp, MutableContent content) {
     // Rendering does not rewrite arbitrary HTTP responses currently
     return null;
@@ -98,64 +132,125 @@ public class RenderingContentRewriter implements ContentRewriter {
 
   public RewriterResults rewrite(Gadget gadget, MutableContent mutableContent) {
     try {
-      Document document = mutableContent.getDocument();
-
-      Element head = (Element)DomUtil.getFirstNamedChildNode(document.getDocumentElement(), "head");
-
-      // Remove all the elements currently in head and add them back after we inject content
-      NodeList children = head.getChildNodes();
-      List<Node> existingHeadContent = Lists.newArrayListWithCapacity(children.getLength());
-      for (int i = 0; i < children.getLength(); i++) {
-        existingHeadContent.add(children.item(i));
+      String templateKey = getTemplateKey(gadget, mutableContent);
+      if (templateKey == null) {
+        render(gadget, mutableContent.getDocument(), false);
+        mutableContent.documentChanged();
+        return RewriterResults.notCacheable();
       }
 
-      for (Node n : existingHeadContent) {
-        head.removeChild(n);
+      RenderTemplate template = templateCache.getElement(templateKey);
+      if (template == null) {
+        String content = mutableContent.getContent();
+        Document document = mutableContent.getDocument();
+        Collection<GadgetFeature> features = render(gadget, document, true);
+        template = RenderTemplate.compile(HtmlSerializer.serialize(document), features);
+        if (template == null) {
+          // The content itself contains a placeholder, so it can't be used as a template.
+          mutableContent.setContent(content);
+          render(gadget, mutableContent.getDocument(), false);
+          mutableContent.documentChanged();
+          return RewriterResults.notCacheable();
+        }
+        templateCache.addElement(templateKey, template);
       }
+      mutableContent.setContent(template.fill(getLibraryConfig(gadget, template.features),
+          getMessages(gadget), getDefaultPrefs(gadget), getPreloads(gadget)));
+      return RewriterResults.notCacheable();
+    } catch (GadgetException e) {
+      // TODO: Rewriter interface needs to be modified to handle GadgetException or
+      // RewriterException or something along those lines.
+      throw new RuntimeException(e);
+    }
+  }
 
+  /**
+   * @return The key for the template of this render, or null if it shouldn't use a template.
+   */
+  private String getTemplateKey(Gadget gadget, MutableContent mutableContent) {
+    GadgetContext context = gadget.getContext();
+    if (templateCache == null || context.getIgnoreCache()) {
+      return null;
+    }
+    String contentChecksum;
+    try {
+      contentChecksum = HashUtil.checksum(mutableContent.getContent().getBytes("UTF-8"));
+    } catch (UnsupportedEncodingException e) {
+      return null;
+    }
+    GadgetSpec spec = gadget.getSpec();
+    View view = gadget.getCurrentView();
+    return new StringBuilder()
+        .append(spec.getUrl()).append('|')
+        .append(spec.getChecksum()).append('|')
+        .append(view == null ? null : view.getName()).append('|')
+        .append(context.getContainer()).append('|')
+        .append(context.getHost()).append('|')
+        .append(context.getLocale()).append('|')
+        .append(context.getDebug()).append('|')
+        .append(context.getParameter("libs")).append('|')
+        .append(contentChecksum)
+        .toString();
+  }
 
-      // Only inject default styles if no doctype was specified.
-      if (document.getDoctype() == null) {
-        Element defaultStyle = document.createElement("style");
-        defaultStyle.setAttribute("type", "text/css");
-        head.appendChild(defaultStyle);
-        defaultStyle.appendChild(defaultStyle.getOwnerDocument().
-            createTextNode(DEFAULT_CSS));
-      }
+  /**
+   * Injects everything needed for rendering into the document.
+   *
+   * @param template True to inject placeholders for the parts that vary by request.
+   * @return The features of the gadget.
+   */
+  private Collection<GadgetFeature> render(Gadget gadget, Document document, boolean template)
+      throws GadgetException {
+    Element head = (Element)DomUtil.getFirstNamedChildNode(document.getDocumentElement(), "head");
 
-      injectBaseTag(gadget, head);
-      injectFeatureLibraries(gadget, head);
+    // Remove all the elements currently in head and add them back after we inject content
+    NodeList children = head.getChildNodes();
+    List<Node> existingHeadContent = Lists.newArrayListWithCapacity(children.getLength());
+    for (int i = 0; i < children.getLength(); i++) {
+      existingHeadContent.add(children.item(i));
+    }
 
-      // This can be one script block.
-      Element mainScriptTag = document.createElement("script");
-      injectMessageBundles(gadget, mainScriptTag);
-      injectDefaultPrefs(gadget, mainScriptTag);
-      injectPreloads(gadget, mainScriptTag);
+    for (Node n : existingHeadContent) {
+      head.removeChild(n);
+    }
 
-      // We need to inject our script before any developer scripts.
-      head.appendChild(mainScriptTag);
 
-      Element body = (Element)DomUtil.getFirstNamedChildNode(document.getDocumentElement(), "body");
+    // Only inject default styles if no doctype was specified.
+    if (document.getDoctype() == null) {
+      Element defaultStyle = document.createElement("style");
+      defaultStyle.setAttribute("type", "text/css");
+      head.appendChild(defaultStyle);
+      defaultStyle.appendChild(defaultStyle.getOwnerDocument().
+          createTextNode(DEFAULT_CSS));
+    }
 
-      LocaleSpec localeSpec = gadget.getLocale();
-      if (localeSpec != null) {
-        body.setAttribute("dir", localeSpec.getLanguageDirection());
-      }
+    injectBaseTag(gadget, head);
+    Collection<GadgetFeature> features = injectFeatureLibraries(gadget, head, template);
 
-      // re append head content
-      for (Node node : existingHeadContent) {
-        head.appendChild(node);
-      }
+    // This can be one script block.
+    Element mainScriptTag = document.createElement("script");
+    injectMessageBundles(gadget, mainScriptTag, template);
+    injectDefaultPrefs(gadget, mainScriptTag, template);
+    injectPreloads(gadget, mainScriptTag, template);
 
-      injectOnLoadHandlers(body);
+    // We need to inject our script before any developer scripts.
+    head.appendChild(mainScriptTag);
 
-      mutableContent.documentChanged();
-      return RewriterResults.notCacheable();
-    } catch (GadgetException e) {
-      // TODO: Rewriter interface needs to be modified to handle GadgetException or
-      // RewriterException or something along those lines.
-      throw new RuntimeException(e);
+    Element body = (Element)DomUtil.getFirstNamedChildNode(document.getDocumentElement(), "body");
+
+    LocaleSpec localeSpec = gadget.getLocale();
+    if (localeSpec != null) {
+      body.setAttribute("dir", localeSpec.getLanguageDirection());
     }
+
+    // re append head content
+    for (Node node : existingHeadContent) {
+      head.appendChild(node);
+    }
+
+    injectOnLoadHandlers(body);
+
+    return features;
   }
 
   private void injectBaseTag(Gadget gadget, Node headTag) {
@@ -181,8 +276,12 @@ public class RenderingContentRewriter implements ContentRewriter {
 
   /**
    * Injects javascript libraries needed to satisfy feature dependencies.
+   *
+   * @param template True to inject a placeholder for the feature configuration.
+   * @return The features of the gadget.
    */
-  private void injectFeatureLibraries(Gadget gadget, Node headTag) throws GadgetException {
+  private Collection<GadgetFeature> injectFeatureLibraries(Gadget gadget, Node headTag,
+      boolean template) throws GadgetException {
     // TODO: If there isn't any js in the document, we can skip this. Unfortunately, that means
     // both script tags (easy to detect) and event handlers (much more complex).
     GadgetContext context = gadget.getContext();
@@ -221,53 +320,57 @@ public class RenderingContentRewriter implements ContentRewriter {
     // Js is needed to allow both inline and external scripts declared in feature.xml.
     String container = context.getContainer();
     Collection<GadgetFeature> features = getFeatures(spec, forced);
-
-    // Precalculate the maximum length in order to avoid excessive garbage generation.
-    int size = 0;
-    for (GadgetFeature feature : features) {
-      for (JsLibrary library : feature.getJsLibraries(RenderingContext.GADGET, container)) {
-        if (library.getType().equals(JsLibrary.Type.URL)) {
-          size += library.getContent().length();
-        }
+    FeatureScripts scripts = getFeatureScripts(features, forced, container, context.getDebug());
+
+    Document document = headTag.getOwnerDocument();
+    for (int i = 0; i < scripts.urls.size(); ++i) {
+      String inlineJs = scripts.inlineJs.get(i);
+      if (inlineJs.length() > 0) {
+        Element inlineTag = document.createElement("script");
+        headTag.appendChild(inlineTag);
+        inlineTag.appendChild(document.createTextNode(inlineJs));
       }
+      Element referenceTag = document.createElement("script");
+      referenceTag.setAttribute("src", scripts.urls.get(i));
+      headTag.appendChild(referenceTag);
     }
 
-    // Really inexact.
-    StringBuilder inlineJs = new StringBuilder(size);
+    String inlineJs = scripts.inlineJs.get(scripts.urls.size()) +
+        (template ? CONFIG_HOLE : getLibraryConfig(gadget, features));
 
+    if (inlineJs.length() > 0) {
+      Element inlineTag = document.createElement("script");
+      headTag.appendChild(inlineTag);
+      inlineTag.appendChild(document.createTextNode(inlineJs));
+    }
+    return features;
+  }
+
+  /**
+   * @return The scripts for the given features, from the cache if possible. Only the
+   *     configuration, which varies by request, is left out.
+   */
+  private FeatureScripts getFeatureScripts(Collection<GadgetFeature> features,
+      Set<String> forced, String container, boolean debug) {
+    if (featureScriptsCache == null) {
+      return new FeatureScripts(features, forced, container, debug);
+    }
+    StringBuilder key = new StringBuilder();
     for (GadgetFeature feature : features) {
-      for (JsLibrary library : feature.getJsLibraries(RenderingContext.GADGET, container)) {
-        if (library.getType().equals(JsLibrary.Type.URL)) {
-          if (inlineJs.length() > 0) {
-            Element inlineTag = headTag.getOwnerDocument().createElement("script");
-            headTag.appendChild(inlineTag);
-            inlineTag.appendChild(headTag.getOwnerDocument().createTextNode(inlineJs.toString()));
-            inlineJs.setLength(0);
-          }
-          Element referenceTag = headTag.getOwnerDocument().createElement("script");
-          referenceTag.setAttribute("src", library.getContent());
-          headTag.appendChild(referenceTag);
-        } else {
-          if (!forced.contains(feature.getName())) {
-            // already pulled this file in from the shared contents.
-            if (context.getDebug()) {
-              inlineJs.append(library.getDebugContent());
-            } else {
-              inlineJs.append(library.getContent());
-            }
-            inlineJs.append(";\n");
-          }
-        }
+      key.append(feature.getName());
+      if (forced.contains(feature.getName())) {
+        key.append('!');
       }
+      key.append(':');
     }
+    key.append('|').append(container).append('|').append(debug);
 
-    inlineJs.append(getLibraryConfig(gadget, features));
-
-    if (inlineJs.length() > 0) {
-      Element inlineTag = headTag.getOwnerDocument().createElement("script");
-      headTag.appendChild(inlineTag);
-      inlineTag.appendChild(headTag.getOwnerDocument().createTextNode(inlineJs.toString()));
+    FeatureScripts scripts = featureScriptsCache.getElement(key.toString());
+    if (scripts == null) {
+      scripts = new FeatureScripts(features, forced, container, debug);
+      featureScriptsCache.addElement(key.toString(), scripts);
     }
+    return scripts;
   }
 
   /**
@@ -367,42 +470,72 @@ public class RenderingContentRewriter implements ContentRewriter {
 
   /**
    * Injects message bundles into the gadget output.
+   *
+   * @param template True to inject a placeholder for the message bundle.
    * @throws GadgetException If we are unable to retrieve the message bundle.
    */
-  private void injectMessageBundles(Gadget gadget, Node scriptTag) throws GadgetException {
+  private void injectMessageBundles(Gadget gadget, Node scriptTag, boolean template)
+      throws GadgetException {
+    Text text = scriptTag.getOwnerDocument().createTextNode("gadgets.Prefs.setMessages_(");
+    text.appendData(template ? MESSAGES_HOLE : getMessages(gadget));
+    text.appendData(");");
+    scriptTag.appendChild(text);
+  }
+
+  /**
+   * @return The message bundle of the gadget, serialized.
+   * @throws GadgetException If we are unable to retrieve the message bundle.
+   */
+  private String getMessages(Gadget gadget) throws GadgetException {
     GadgetContext context = gadget.getContext();
     MessageBundle bundle = messageBundleFactory.getBundle(
         gadget.getSpec(), context.getLocale(), context.getIgnoreCache());
+    return bundle.toJSONString();
+  }
 
-    String msgs = bundle.toJSONString();
-
-    Text text = scriptTag.getOwnerDocument().createTextNode("gadgets.Prefs.setMessages_(");
-    text.appendData(msgs);
+  /**
+   * Injects default values for user prefs into the gadget output.
+   *
+   * @param template True to inject a placeholder for the default values.
+   */
+  private void injectDefaultPrefs(Gadget gadget, Node scriptTag, boolean template) {
+    Text text = scriptTag.getOwnerDocument().createTextNode("gadgets.Prefs.setDefaultPrefs_(");
+    text.appendData(template ? PREFS_HOLE : getDefaultPrefs(gadget));
     text.appendData(");");
     scriptTag.appendChild(text);
   }
 
   /**
-   * Injects default values for user prefs into the gadget output.
+   * @return The default values of the gadget's user prefs, serialized. The spec has the values of
+   *     this request substituted into them, so they can't be kept in a template.
    */
-  private void injectDefaultPrefs(Gadget gadget, Node scriptTag) {
+  private String getDefaultPrefs(Gadget gadget) {
     List<UserPref> prefs = gadget.getSpec().getUserPrefs();
     Map<String, String> defaultPrefs = Maps.newHashMapWithExpectedSize(prefs.size());
     for (UserPref up : prefs) {
       defaultPrefs.put(up.getName(), up.getDefaultValue());
     }
-    Text text = scriptTag.getOwnerDocument().createTextNode("gadgets.Prefs.setDefaultPrefs_(");
-    text.appendData(JsonSerializer.serialize(defaultPrefs));
-    text.appendData(");");
-    scriptTag.appendChild(text);
+    return JsonSerializer.serialize(defaultPrefs);
   }
 
   /**
    * Injects preloads into the gadget output.
    *
+   * @param template True to inject a placeholder for the preloads.
+   */
+  private void injectPreloads(Gadget gadget, Node scriptTag, boolean template) {
+    Text text = scriptTag.getOwnerDocument().createTextNode("gadgets.io.preloaded_=");
+    text.appendData(template ? PRELOADS_HOLE : getPreloads(gadget));
+    text.appendData(";");
+    scriptTag.appendChild(text);
+  }
+
+  /**
+   * @return The preloads of the gadget, serialized.
+   *
    * If preloading fails for any reason, we just output an empty object.
    */
-  private void injectPreloads(Gadget gadget, Node scriptTag) {
+  private String getPreloads(Gadget gadget) {
     Preloads preloads = gadget.getPreloads();
     Map<String, Object> preload = Maps.newHashMap();
 
@@ -416,9 +549,92 @@ public class RenderingContentRewriter implements ContentRewriter {
         LOG.log(Level.WARNING, "Unexpected error when preloading", pe);
       }
     }
-    Text text = scriptTag.getOwnerDocument().createTextNode("gadgets.io.preloaded_=");
-    text.appendData(JsonSerializer.serialize(preload));
-    text.appendData(";");
-    scriptTag.appendChild(text);
+    return JsonSerializer.serialize(preload);
+  }
+
+  /**
+   * The script tags needed for a set of features: the url of each external library, with the
+   * inline JavaScript that precedes it, followed by the inline JavaScript after the last url.
+   */
+  private static class FeatureScripts {
+    private final List<String> urls = Lists.newArrayList();
+    private final List<String> inlineJs = Lists.newArrayList();
+
+    private FeatureScripts(Collection<GadgetFeature> features, Set<String> forced,
+        String container, boolean debug) {
+      StringBuilder js = new StringBuilder();
+      for (GadgetFeature feature : features) {
+        for (JsLibrary library : feature.getJsLibraries(RenderingContext.GADGET, container)) {
+          if (library.getType().equals(JsLibrary.Type.URL)) {
+            inlineJs.add(js.toString());
+            js.setLength(0);
+            urls.add(library.getContent());
+          } else {
+            if (!forced.contains(feature.getName())) {
+              // already pulled this file in from the shared contents.
+              if (debug) {
+                js.append(library.getDebugContent());
+              } else {
+                js.append(library.getContent());
+              }
+              js.append(";\n");
+            }
+          }
+        }
+      }
+      inlineJs.add(js.toString());
+    }
+  }
+
+  /**
+   * Rendered output with the parts that vary by request left out, so that it can be reused for
+   * any request that renders the same content the same way.
+   */
+  private static class RenderTemplate {
+    // The output before, between and after the holes.
+    private final String[] segments;
+    private final Collection<GadgetFeature> features;
+
+    private RenderTemplate(String[] segments, Collection<GadgetFeature> features) {
+      this.segments = segments;
+      this.features = features;
+    }
+
+    /**
+     * @return The template for output rendered with placeholders, or null if the placeholders
+     *     don't each appear exactly once, in order.
+     */
+    static RenderTemplate compile(String output, Collection<GadgetFeature> features) {
+      String[] segments = new String[HOLES.length + 1];
+      int start = 0;
+      for (int i = 0; i < HOLES.length; i++) {
+        int hole = output.indexOf(HOLES[i]);
+        if (hole < start || hole != output.lastIndexOf(HOLES[i])) {
+          return null;
+        }
+        segments[i] = output.substring(start, hole);
+        start = hole + HOLES[i].length();
+      }
+      segments[HOLES.length] = output.substring(start);
+      return new RenderTemplate(segments, features);
+    }
+
+    /**
+     * @param values The content of each hole, in the order of {@link #HOLES}.
+     */
+    String fill(String... values) {
+      int length = 0;
+      for (String segment : segments) {
+        length += segment.length();
+      }
+      for (String value : values) {
+        length += value.length();
+      }
+      StringBuilder output = new StringBuilder(length);
+      for (int i = 0; i < values.length; i++) {
+        output.append(segments[i]).append(values[i]);
+      }
+      return output.append(segments[values.length]).toString();
+    }
   }
 }
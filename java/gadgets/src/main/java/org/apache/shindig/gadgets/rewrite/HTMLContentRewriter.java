@@ -104,10 +104,16 @@ public class HTMLContentRewriter  implements ContentRewriter {
 
   protected RewriterResults rewriteImpl(ContentRewriterFeature feature, Uri gadgetUri,
                                         Uri contentBase, MutableContent content) {
-    if (!feature.isRewriteEnabled() || content.getDocument() == null) {
+    if (!feature.isRewriteEnabled() || content.getReadOnlyDocument() == null) {
       return null;
     }
 
+    // Inspect the possibly shared parse tree first so content with nothing to rewrite never
+    // pays for a private copy of the document.
+    if (!hasRewritableTags(content.getReadOnlyDocument(), feature)) {
+      return RewriterResults.cacheableIndefinitely();
+    }
+
     // Get ALL interesting tags
     List<Element> tagList =
         DomUtil.getElementsByTagNameCaseInsensitive(content.getDocument(), TAGS);
@@ -134,6 +140,27 @@ public class HTMLContentRewriter  implements ContentRewriter {
     return RewriterResults.cacheableIndefinitely();
   }
 
+  /**
+   * Walks the tree with plain sibling traversal rather than a NodeIterator, which registers
+   * itself with the document and so cannot be used on a shared tree.
+   */
+  private static boolean hasRewritableTags(Node node, ContentRewriterFeature feature) {
+    for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+      if (child.getNodeType() != Node.ELEMENT_NODE) {
+        continue;
+      }
+      String tagName = child.getNodeName().toLowerCase();
+      if (TAGS.contains(tagName) && (feature.getIncludedTags().contains(tagName) ||
+          ("link".equals(tagName) && feature.getIncludedTags().contains("style")))) {
+        return true;
+      }
+      if (hasRewritableTags(child, feature)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   protected boolean rewriteStyleTags(Element head, List<Element> elementList,
       ContentRewriterFeature feature, Uri gadgetUri, Uri contentBase) {
     if (!feature.getIncludedTags().contains("style")) {
@@ -24,6 +24,9 @@ import org.apache.shindig.gadgets.parse.HtmlSerializer;
 
 import org.w3c.dom.Document;
 
+import java.io.Reader;
+import java.io.StringReader;
+
 /**
  * Object that maintains a String representation of arbitrary contents
  * and a consistent view of those contents as an HTML parse tree.
@@ -32,6 +35,7 @@ public class MutableContent {
   private String content;
   private HttpResponse contentSource;
   private Document document;
+  private Document sharedDocument;
   private final GadgetHtmlParser contentParser;
 
   private static final String MUTABLE_CONTENT_LISTENER = "MutableContentListener";
@@ -84,6 +88,19 @@ public class MutableContent {
     return content;
   }
   
+  /**
+   * Retrieves the current content for rewriters that process it in a single pass. Content that
+   * hasn't been decoded from the source response yet is decoded as it is read, rather than into
+   * a String first, so the only full copy a streaming rewriter makes is its output.
+   * @return Renderable/active content.
+   */
+  public Reader getContentReader() {
+    if (content == null && contentSource != null) {
+      return contentSource.getResponseReader();
+    }
+    return new StringReader(getContent());
+  }
+
   /**
    * Sets the object's content as a raw String. Note, this operation
    * may clears the document if the content has changed
@@ -94,6 +111,7 @@ public class MutableContent {
     if (content == null || !content.equals(newContent)) {
       content = newContent;
       document = null;
+      sharedDocument = null;
       contentSource = null;
     }
   }
@@ -125,7 +143,12 @@ public class MutableContent {
       return document;
     }
     try {
-      document = contentParser.parseDom(getContent());
+      if (sharedDocument != null) {
+        document = contentParser.getWritableDocument(sharedDocument);
+        sharedDocument = null;
+      } else {
+        document = contentParser.parseDom(getContent());
+      }
       document.setUserData(MUTABLE_CONTENT_LISTENER, this, null);
     } catch (GadgetException e) {
       // TODO: emit info message
@@ -134,6 +157,27 @@ public class MutableContent {
     return document;
   }
 
+  /**
+   * Retrieves the object contents in parsed form for inspection only. The result may be
+   * shared with other requests through the parser's document cache and must not be modified;
+   * rewriters that decide to edit the tree must switch to {@code getDocument}, which only
+   * copies the shared tree at that point. Once {@code getDocument} has been called this
+   * returns the same, editable document.
+   */
+  public Document getReadOnlyDocument() {
+    if (document != null) {
+      return document;
+    }
+    if (sharedDocument == null) {
+      try {
+        sharedDocument = contentParser.parseSharedDom(getContent());
+      } catch (GadgetException e) {
+        return null;
+      }
+    }
+    return sharedDocument;
+  }
+
   /**
    * True if current state has a parsed document. Allows rewriters to switch mode based on
    * which content is most readily available
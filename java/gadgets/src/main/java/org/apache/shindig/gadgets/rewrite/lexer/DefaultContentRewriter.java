@@ -40,12 +40,7 @@ import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import com.google.inject.name.Named;
 
-import java.io.ByteArrayOutputStream;
-import java.io.OutputStreamWriter;
-import java.io.StringReader;
 import java.io.StringWriter;
-import java.io.UnsupportedEncodingException;
-import java.io.Writer;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -97,9 +92,6 @@ public class DefaultContentRewriter implements ContentRewriter {
   public RewriterResults rewrite(HttpRequest request, HttpResponse original,
       MutableContent content) {
     try {
-      ByteArrayOutputStream baos = new ByteArrayOutputStream(
-          (content.getContent().length() * 110) / 100);
-      OutputStreamWriter output = new OutputStreamWriter(baos, original.getEncoding());
       String mimeType = original.getHeader("Content-Type");
       if (request.getRewriteMimeType() != null) {
         mimeType = request.getRewriteMimeType();
@@ -108,12 +100,14 @@ public class DefaultContentRewriter implements ContentRewriter {
       if (request.getGadget() != null) {
         spec = specFactory.getGadgetSpec(request.getGadget().toJavaUri(), false);
       }
-      if (rewrite(spec, request.getUri(), content, mimeType, output)) {
-        content.setContent(new String(baos.toByteArray()));
+      // Tokens are lexed from the response as it is decoded and written straight to the output,
+      // so the only copy of the content made here is the rewritten result.
+      String rewritten = rewrite(spec, request.getUri(), content, mimeType,
+          original.getContentLength());
+      if (rewritten != null) {
+        content.setContent(rewritten);
         return RewriterResults.cacheableIndefinitely();
       }
-    } catch (UnsupportedEncodingException uee) {
-      throw new RuntimeException(uee);
     } catch (GadgetException ge) {
       // Couldn't retrieve gadgetSpec
     }
@@ -121,31 +115,37 @@ public class DefaultContentRewriter implements ContentRewriter {
   }
 
   public RewriterResults rewrite(Gadget gadget, MutableContent content) {
-    StringWriter sw = new StringWriter();
     GadgetSpec spec = gadget.getSpec();
     Uri base = spec.getUrl();
     View view = gadget.getCurrentView();
     if (view != null && view.getHref() != null) {
       base = view.getHref();
     }
-    if (rewrite(spec, base, content, "text/html", sw)) {
-      content.setContent(sw.toString());
+    String rewritten = rewrite(spec, base, content, "text/html", -1);
+    if (rewritten != null) {
+      content.setContent(rewritten);
       return RewriterResults.cacheableIndefinitely();
     }
     return null;
   }
 
-  private boolean rewrite(GadgetSpec spec, Uri source, MutableContent mc, String mimeType, Writer w) {
+  /**
+   * @param contentLength The length of the content in bytes, or -1 if it isn't known. Only used
+   *     to size the output.
+   * @return The rewritten content, or null if the content isn't rewritten.
+   */
+  private String rewrite(GadgetSpec spec, Uri source, MutableContent mc, String mimeType,
+      int contentLength) {
     // Dont rewrite content if the spec is unavailable
     if (spec == null) {
-      return false;
+      return null;
     }
 
     ContentRewriterFeature rewriterFeature
         = new ContentRewriterFeature(spec, includeUrls, excludeUrls, expires, includeTags);
 
     if (!rewriterFeature.isRewriteEnabled()) {
-      return false;
+      return null;
     }
     if (isHTML(mimeType)) {
       Map<String, HtmlTagTransformer> transformerMap = Maps.newHashMap();
@@ -168,18 +168,28 @@ public class DefaultContentRewriter implements ContentRewriter {
         transformerMap
             .put("script", new JavascriptTagMerger(spec, rewriterFeature, getConcatUrl(), source));
       }
-      HtmlRewriter.rewrite(new StringReader(mc.getContent()), source, transformerMap, w);
-      return true;
+      StringWriter w = createOutput(contentLength);
+      HtmlRewriter.rewrite(mc.getContentReader(), source, transformerMap, w);
+      return w.toString();
     } else if (isCSS(mimeType)) {
       if (getProxyUrl() != null) {
-        CssRewriter.rewrite(new StringReader(mc.getContent()), source,
+        StringWriter w = createOutput(contentLength);
+        CssRewriter.rewrite(mc.getContentReader(), source,
             createLinkRewriter(spec, rewriterFeature), w, false);
-        return true;
+        return w.toString();
       } else {
-        return false;
+        return null;
       }
     }
-    return false;
+    return null;
+  }
+
+  private static StringWriter createOutput(int contentLength) {
+    if (contentLength <= 0) {
+      return new StringWriter();
+    }
+    // Leave some room for the rewritten urls, which are usually longer.
+    return new StringWriter((contentLength * 110) / 100);
   }
 
   private boolean isHTML(String mime) {
@@ -15,24 +15,53 @@
  * KIND, either express or implied. See the License for the
  * specific language governing permissions and limitations under the License.
  */
-
 package org.apache.shindig.gadgets.servlet;
 
+import org.apache.shindig.common.cache.Cache;
+import org.apache.shindig.common.cache.CacheProvider;
+import org.apache.shindig.common.cache.Weigher;
 import org.apache.shindig.common.servlet.InjectedServlet;
+import org.apache.shindig.common.util.HashUtil;
+import org.apache.shindig.common.util.Utf8UrlCoder;
 import org.apache.shindig.gadgets.GadgetException;
+import org.apache.shindig.gadgets.http.HttpRequest;
+import org.apache.shindig.gadgets.http.HttpResponse;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
 import com.google.inject.Inject;
+import com.google.inject.name.Named;
 
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.*;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.util.Locale;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * Servlet which concatenates the content of several proxied HTTP responses
  *
+ * The parts are fetched concurrently, up to a limit per request, and written out in order as
+ * soon as each part and all of the parts before it are ready. Parts that aren't ready by the
+ * request deadline, or that could not be started before it, are replaced with an error comment.
+ *
+ * When the output may be cached, a copy of it is kept as it is written. When every part is fetched
+ * successfully, that copy is cached until the first of the parts expires, since no part is
+ * fetched again before then. Output served from the cache is sent with an ETag. Requests that
+ * ignore the cache drop the cached output, so that the next request assembles it from the
+ * refreshed parts.
+ *
  * @see org.apache.shindig.gadgets.rewrite.HTMLContentRewriter
  */
 public class ConcatProxyServlet extends InjectedServlet {
@@ -40,13 +69,63 @@ public class ConcatProxyServlet extends InjectedServlet {
   private static final Logger logger
       = Logger.getLogger(ConcatProxyServlet.class.getName());
 
+  static final int DEFAULT_MAX_PARALLEL_FETCHES = 6;
+  static final long DEFAULT_TIMEOUT_MS = 10000;
+  static final String CACHE_NAME = "concatBundles";
+
+  private static final byte[] CRLF = { '\r', '\n' };
+
+  // Request parameters other than the urls that change the assembled output.
+  private static final List<String> BUNDLE_KEY_PARAMS = ImmutableList.of(
+      ProxyBase.CONTAINER_PARAM, ProxyBase.SYND_PARAM, ProxyBase.GADGET_PARAM,
+      ProxyBase.REWRITE_MIME_TYPE_PARAM, ProxyBase.REFRESH_PARAM);
+
+  private static final Weigher<Bundle> BUNDLE_WEIGHER = new Weigher<Bundle>() {
+    public int weigh(Bundle bundle) {
+      return bundle.content.length;
+    }
+  };
+
   private transient ProxyHandler proxyHandler;
+  private transient Executor executor;
+  private transient Cache<String, Bundle> bundles;
+  private int maxParallelFetches = DEFAULT_MAX_PARALLEL_FETCHES;
+  private long timeoutMs = DEFAULT_TIMEOUT_MS;
 
   @Inject
   public void setProxyHandler(ProxyHandler proxyHandler) {
     this.proxyHandler = proxyHandler;
   }
 
+  /**
+   * @param executor Runs the fetches of individual parts. Without one, parts are fetched one
+   *     after another on the request thread.
+   */
+  @Inject(optional = true)
+  public void setExecutor(Executor executor) {
+    this.executor = executor;
+  }
+
+  @Inject(optional = true)
+  public void setMaxParallelFetches(
+      @Named("shindig.concat.maxParallelFetches") int maxParallelFetches) {
+    this.maxParallelFetches = Math.max(1, maxParallelFetches);
+  }
+
+  @Inject(optional = true)
+  public void setTimeout(@Named("shindig.concat.timeoutMs") long timeoutMs) {
+    this.timeoutMs = timeoutMs;
+  }
+
+  /**
+   * @param cacheProvider Provides the cache of assembled output. Without one, the output is
+   *     assembled for every request.
+   */
+  @Inject(optional = true)
+  public void setCacheProvider(CacheProvider cacheProvider) {
+    bundles = cacheProvider.createCache(CACHE_NAME, BUNDLE_WEIGHER);
+  }
+
   @Override
   protected void doGet(HttpServletRequest request, HttpServletResponse response)
       throws IOException {
@@ -63,35 +142,208 @@ public class ConcatProxyServlet extends InjectedServlet {
           Integer.valueOf(request.getParameter(ProxyBase.REFRESH_PARAM)));
     }
     response.setHeader("Content-Disposition", "attachment;filename=p.txt");
+
+    List<String> urls = Lists.newArrayList();
     for (int i = 1; i < Integer.MAX_VALUE; i++) {
       String url = request.getParameter(Integer.toString(i));
       if (url == null) {
         break;
       }
-      try {
-        response.getOutputStream().println("/* ---- Start " + url + " ---- */");
+      urls.add(url);
+    }
+
+    String bundleKey = null;
+    if (bundles != null) {
+      bundleKey = getBundleKey(request, urls);
+      if (getIgnoreCache(request)) {
+        bundles.removeElement(bundleKey);
+        bundleKey = null;
+      } else {
+        Bundle bundle = bundles.getElement(bundleKey);
+        if (bundle != null && bundle.expiration > System.currentTimeMillis()) {
+          writeBundle(request, response, bundle);
+          return;
+        }
+      }
+    }
 
-        ResponseWrapper wrapper = new ResponseWrapper(response);
-        proxyHandler.fetch(new RequestWrapper(request, url), wrapper);
+    long deadline = System.currentTimeMillis() + timeoutMs;
+    List<Future<HttpResponse>> parts = Lists.newArrayListWithCapacity(urls.size());
+    for (int i = 0; i < urls.size() && i < maxParallelFetches; i++) {
+      parts.add(startFetch(request, urls.get(i)));
+    }
 
-        if (wrapper.getStatus() != HttpServletResponse.SC_OK) {
-          response.getOutputStream().println(
-              formatHttpError(wrapper.getStatus(), wrapper.getErrorMessage()));
+    ServletOutputStream out = response.getOutputStream();
+    ByteArrayOutputStream assembled = bundleKey == null ? null : new ByteArrayOutputStream();
+    long expiration = Long.MAX_VALUE;
+    for (int i = 0; i < urls.size(); i++) {
+      String url = urls.get(i);
+      Future<HttpResponse> part = i < parts.size() ? parts.get(i) : null;
+      ByteArrayOutputStream section = new ByteArrayOutputStream();
+      println(section, "/* ---- Start " + url + " ---- */");
+      try {
+        if (part == null) {
+          // The deadline passed before this part could be started.
+          throw new TimeoutException();
         }
-
-        response.getOutputStream().println("/* ---- End " + url + " ---- */");
+        HttpResponse results = getPart(part, deadline);
+        if (results.getHttpStatusCode() != HttpResponse.SC_OK) {
+          // We don't want the content returned by the remote server for errors; we'll just
+          // include an HTTP error code to avoid creating syntactically invalid output overall.
+          println(section, formatHttpError(results.getHttpStatusCode(), null));
+          expiration = 0;
+        } else {
+          section.write(results.getResponseAsBytes());
+          expiration = Math.min(expiration, results.getCacheExpiration());
+        }
+        println(section, "/* ---- End " + url + " ---- */");
+      } catch (TimeoutException e) {
+        if (part != null) {
+          part.cancel(true);
+        }
+        println(section, formatHttpError(HttpServletResponse.SC_GATEWAY_TIMEOUT, "Timed out"));
+        println(section, "/* ---- End " + url + " ---- */");
+        expiration = 0;
       } catch (GadgetException ge) {
         if (ge.getCode() != GadgetException.Code.FAILED_TO_RETRIEVE_CONTENT) {
+          cancelAll(parts);
+          section.writeTo(out);
           outputError(ge, url, response);
           return;
         } else {
-          response.getOutputStream().println("/* ---- End " + url + " 404 ---- */");
+          println(section, "/* ---- End " + url + " 404 ---- */");
+          expiration = 0;
         }
       }
+      section.writeTo(out);
+      out.flush();
+      if (assembled != null) {
+        section.writeTo(assembled);
+      }
+
+      // Keep the number of parts being fetched at the limit, until the deadline.
+      if (parts.size() < urls.size() && System.currentTimeMillis() < deadline) {
+        parts.add(startFetch(request, urls.get(parts.size())));
+      }
+    }
+
+    // Without any parts, nothing limits how long the output could be cached.
+    if (assembled != null && !urls.isEmpty() && expiration > System.currentTimeMillis()) {
+      bundles.addElement(bundleKey, new Bundle(assembled.toByteArray(), expiration));
+    }
+    response.setStatus(200);
+  }
+
+  /**
+   * Writes cached output with its ETag, or just the ETag if the client has the output already.
+   */
+  private static void writeBundle(HttpServletRequest request, HttpServletResponse response,
+      Bundle bundle) throws IOException {
+    response.setHeader("ETag", bundle.etag);
+    if (bundle.etag.equals(request.getHeader("If-None-Match"))) {
+      response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      return;
     }
+    response.getOutputStream().write(bundle.content);
     response.setStatus(200);
   }
 
+  private static boolean getIgnoreCache(HttpServletRequest request) {
+    String ignoreCache = request.getParameter(ProxyBase.IGNORE_CACHE_PARAM);
+    return ignoreCache != null && !ignoreCache.equals("0");
+  }
+
+  /**
+   * @return A key for the assembled output of the request. The Host header is part of the key
+   *     because it decides whether the parts may be proxied at all.
+   */
+  private static String getBundleKey(HttpServletRequest request, List<String> urls) {
+    StringBuilder key = new StringBuilder();
+    key.append(Utf8UrlCoder.encode(String.valueOf(request.getHeader("Host"))));
+    for (String name : BUNDLE_KEY_PARAMS) {
+      String value = request.getParameter(name);
+      if (value != null) {
+        key.append('&').append(name).append('=').append(Utf8UrlCoder.encode(value));
+      }
+    }
+    for (String url : urls) {
+      key.append('\n').append(Utf8UrlCoder.encode(url));
+    }
+    return key.toString();
+  }
+
+  /**
+   * Writes a line the way ServletOutputStream.println does.
+   */
+  private static void println(OutputStream out, String line) throws IOException {
+    out.write(line.getBytes("ISO-8859-1"));
+    out.write(CRLF);
+  }
+
+  /**
+   * Starts fetching one part, on the executor if there is one. Everything the fetch needs from the
+   * servlet request is read here, on the request thread.
+   */
+  private Future<HttpResponse> startFetch(HttpServletRequest request, String url) {
+    final HttpRequest rcr;
+    try {
+      rcr = proxyHandler.createHttpRequest(new RequestWrapper(request, url));
+    } catch (final GadgetException e) {
+      FutureTask<HttpResponse> failed = new FutureTask<HttpResponse>(
+          new Callable<HttpResponse>() {
+            public HttpResponse call() throws Exception {
+              throw e;
+            }
+          });
+      failed.run();
+      return failed;
+    }
+    FutureTask<HttpResponse> task = new FutureTask<HttpResponse>(
+        new Callable<HttpResponse>() {
+          public HttpResponse call() throws Exception {
+            return proxyHandler.fetchResponse(rcr);
+          }
+        });
+    if (executor == null) {
+      task.run();
+    } else {
+      try {
+        executor.execute(task);
+      } catch (RejectedExecutionException e) {
+        task.run();
+      }
+    }
+    return task;
+  }
+
+  /**
+   * Waits until the deadline for a part to be fetched.
+   */
+  private static HttpResponse getPart(Future<HttpResponse> part, long deadline)
+      throws GadgetException, TimeoutException {
+    try {
+      return part.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new TimeoutException("Interrupted");
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof GadgetException) {
+        throw (GadgetException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new GadgetException(GadgetException.Code.INTERNAL_SERVER_ERROR, cause);
+    }
+  }
+
+  private static void cancelAll(List<Future<HttpResponse>> parts) {
+    for (Future<HttpResponse> part : parts) {
+      part.cancel(true);
+    }
+  }
+
   private String formatHttpError(int status, String errorMessage) {
     StringBuilder err = new StringBuilder();
     err.append("/* ---- Error ");
@@ -121,7 +373,22 @@ public class ConcatProxyServlet extends InjectedServlet {
   }
 
   /**
-   * Simple request wrapper to make repeated calls to ProxyHandler
+   * Assembled output of a concat request.
+   */
+  private static class Bundle {
+    private final byte[] content;
+    private final String etag;
+    private final long expiration;
+
+    private Bundle(byte[] content, long expiration) {
+      this.content = content;
+      this.etag = '"' + HashUtil.checksum(content) + '"';
+      this.expiration = expiration;
+    }
+  }
+
+  /**
+   * Simple request wrapper to make repeated calls to ProxyHandler.
    */
   private static class RequestWrapper extends HttpServletRequestWrapper {
 
@@ -140,141 +407,4 @@ public class ConcatProxyServlet extends InjectedServlet {
       return super.getParameter(paramName);
     }
   }
-
-  /**
-   * Wrap the response to prevent writing through of the status code and to hold a reference to the
-   * stream across multiple proxied parts
-   */
-  private static class ResponseWrapper extends HttpServletResponseWrapper {
-
-    private ServletOutputStream outputStream;
-
-    private int errorCode = SC_OK;
-    private String errorMessage;
-
-    private ResponseWrapper(HttpServletResponse httpServletResponse) {
-      super(httpServletResponse);
-    }
-
-    @Override
-    public ServletOutputStream getOutputStream() throws IOException {
-      // For errors, we don't want the content returned by the remote
-      // server;  we'll just include an HTTP error code to avoid creating
-      // syntactically invalid output overall.
-      if (errorCode != SC_OK) {
-        outputStream = new NullServletOutputStream();
-      }
-
-      if (outputStream == null) {
-        outputStream = super.getOutputStream();
-      }
-      return outputStream;
-    }
-
-    public int getStatus() {
-      return errorCode;
-    }
-
-    public String getErrorMessage() {
-      return errorMessage;
-    }
-
-    @Override
-    public void addCookie(Cookie cookie) {
-    }
-
-    // Suppress headers
-    @Override
-    public void setDateHeader(String s, long l) {
-    }
-
-    @Override
-    public void addDateHeader(String s, long l) {
-    }
-
-    @Override
-    public void setHeader(String s, String s1) {
-    }
-
-    @Override
-    public void addHeader(String s, String s1) {
-    }
-
-    @Override
-    public void setIntHeader(String s, int i) {
-    }
-
-    @Override
-    public void addIntHeader(String s, int i) {
-    }
-
-    @Override
-    public void sendError(int i, String s) throws IOException {
-      errorCode = i;
-      errorMessage = s;
-    }
-
-    @Override
-    public void sendError(int i) throws IOException {
-      errorCode = i;
-    }
-
-    @Override
-    public void sendRedirect(String s) throws IOException {
-    }
-
-    @Override
-    public void setStatus(int i) {
-    }
-
-    @Override
-    public void setStatus(int i, String s) {
-    }
-
-    @Override
-    public void setContentLength(int i) {
-    }
-
-    @Override
-    public void setContentType(String s) {
-    }
-
-    @Override
-    public void flushBuffer() throws IOException {
-    }
-
-    @Override
-    public void reset() {
-    }
-
-    @Override
-    public void resetBuffer() {
-    }
-
-    @Override
-    public void setLocale(Locale locale) {
-    }
-
-    @Override
-    public void setCharacterEncoding(String s) {
-    }
-  }
-
-  /**
-   * Small ServletOutputStream class, overriding just enough to ensure
-   * there's no output.
-   */
-  private static class NullServletOutputStream extends ServletOutputStream {
-    public void write(int b) throws IOException {
-    }
-
-    @Override
-    public void write(byte b[], int off, int len) throws IOException {
-    }
-
-    @Override
-    public void write(byte b[]) throws IOException {
-    }
-  }
 }
-
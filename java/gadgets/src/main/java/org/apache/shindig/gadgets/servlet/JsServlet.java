@@ -20,7 +20,11 @@ package org.apache.shindig.gadgets.servlet;
 import com.google.common.collect.ImmutableSet;
 
 import org.apache.shindig.common.ContainerConfig;
+import org.apache.shindig.common.cache.Cache;
+import org.apache.shindig.common.cache.CacheProvider;
+import org.apache.shindig.common.cache.Weigher;
 import org.apache.shindig.common.servlet.InjectedServlet;
+import org.apache.shindig.common.util.HashUtil;
 import org.apache.shindig.gadgets.GadgetFeature;
 import org.apache.shindig.gadgets.GadgetFeatureRegistry;
 import org.apache.shindig.gadgets.JsLibrary;
@@ -28,11 +32,13 @@ import org.apache.shindig.gadgets.RenderingContext;
 
 import com.google.inject.Inject;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.zip.GZIPOutputStream;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -40,15 +46,37 @@ import javax.servlet.http.HttpServletResponse;
 /**
  * Simple servlet serving up JavaScript files by their registered aliases.
  * Used by type=URL gadgets in loading JavaScript resources.
+ *
+ * The joined JavaScript for each combination of features, container, rendering context and debug
+ * mode is built and gzipped once and then cached, so that requests only have to pick the variant
+ * the client accepts.
  */
 public class JsServlet extends InjectedServlet {
+  static final String CACHE_NAME = "jsBundles";
+
+  private static final Weigher<JsBundle> BUNDLE_WEIGHER = new Weigher<JsBundle>() {
+    public int weigh(JsBundle bundle) {
+      return bundle.content.length + bundle.gzippedContent.length;
+    }
+  };
 
   private GadgetFeatureRegistry registry;
+  private transient Cache<String, JsBundle> bundles;
+
   @Inject
   public void setRegistry(GadgetFeatureRegistry registry) {
     this.registry = registry;
   }
 
+  /**
+   * @param cacheProvider Provides the cache of joined JavaScript. Without one, the JavaScript is
+   *     joined and compressed for every request.
+   */
+  @Inject(optional = true)
+  public void setCacheProvider(CacheProvider cacheProvider) {
+    bundles = cacheProvider.createCache(CACHE_NAME, BUNDLE_WEIGHER);
+  }
+
   @Override
   protected void doGet(HttpServletRequest req, HttpServletResponse resp)
       throws IOException {
@@ -86,22 +114,22 @@ public class JsServlet extends InjectedServlet {
         RenderingContext.CONTAINER : RenderingContext.GADGET;
 
     Collection<GadgetFeature> features = registry.getFeatures(needed);
-    StringBuilder jsData = new StringBuilder();
+    // Unknown features are left out, so keys are limited to combinations of real features.
+    StringBuilder key = new StringBuilder();
     for (GadgetFeature feature : features) {
-      for (JsLibrary lib : feature.getJsLibraries(context, container)) {
-        if (!lib.getType().equals(JsLibrary.Type.URL)) {
-          if (debug) {
-            jsData.append(lib.getDebugContent());
-          } else {
-            jsData.append(lib.getContent());
-          }
-          jsData.append(";\n");
-        }
-      }
+      key.append(feature.getName()).append(':');
     }
+    key.append('|').append(container).append('|').append(context).append('|').append(debug);
 
+    JsBundle bundle = bundles == null ? null : bundles.getElement(key.toString());
+    if (bundle == null) {
+      bundle = buildBundle(features, context, container, debug);
+      if (bundles != null) {
+        bundles.addElement(key.toString(), bundle);
+      }
+    }
 
-    if (jsData.length() == 0) {
+    if (bundle.content.length == 0) {
       resp.setStatus(HttpServletResponse.SC_NOT_FOUND);
       return;
     }
@@ -113,9 +141,91 @@ public class JsServlet extends InjectedServlet {
       // Unversioned files get cached for 1 hour.
       HttpUtil.setCachingHeaders(resp, 60 * 60);
     }
+    resp.setHeader("Vary", "Accept-Encoding");
+
+    boolean gzip = acceptsGzip(req.getHeader("Accept-Encoding"));
+    String etag = gzip ? bundle.gzippedEtag : bundle.etag;
+    resp.setHeader("ETag", etag);
+    if (etag.equals(req.getHeader("If-None-Match"))) {
+      resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      return;
+    }
+
     resp.setContentType("text/javascript; charset=utf-8");
-    byte[] response = jsData.toString().getBytes("UTF-8");
+    byte[] response = bundle.content;
+    if (gzip) {
+      resp.setHeader("Content-Encoding", "gzip");
+      response = bundle.gzippedContent;
+    }
     resp.setContentLength(response.length);
     resp.getOutputStream().write(response);
   }
+
+  private static JsBundle buildBundle(Collection<GadgetFeature> features,
+      RenderingContext context, String container, boolean debug) throws IOException {
+    StringBuilder jsData = new StringBuilder();
+    for (GadgetFeature feature : features) {
+      for (JsLibrary lib : feature.getJsLibraries(context, container)) {
+        if (!lib.getType().equals(JsLibrary.Type.URL)) {
+          if (debug) {
+            jsData.append(lib.getDebugContent());
+          } else {
+            jsData.append(lib.getContent());
+          }
+          jsData.append(";\n");
+        }
+      }
+    }
+    return new JsBundle(jsData.toString().getBytes("UTF-8"));
+  }
+
+  /**
+   * @return True if the Accept-Encoding header allows gzip.
+   */
+  static boolean acceptsGzip(String acceptEncoding) {
+    if (acceptEncoding == null) {
+      return false;
+    }
+    for (String coding : acceptEncoding.split(",")) {
+      String[] params = coding.split(";");
+      String name = params[0].trim();
+      if (name.equalsIgnoreCase("gzip") || name.equalsIgnoreCase("x-gzip")) {
+        for (int i = 1; i < params.length; ++i) {
+          String param = params[i].trim();
+          if (param.startsWith("q=")) {
+            try {
+              return Float.parseFloat(param.substring(2)) > 0;
+            } catch (NumberFormatException e) {
+              return false;
+            }
+          }
+        }
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Joined JavaScript for a set of features, in plain and gzipped form. The two forms have
+   * different strong ETags since they are different representations.
+   */
+  private static class JsBundle {
+    private final byte[] content;
+    private final byte[] gzippedContent;
+    private final String etag;
+    private final String gzippedEtag;
+
+    private JsBundle(byte[] content) throws IOException {
+      this.content = content;
+      ByteArrayOutputStream gzipped = new ByteArrayOutputStream(content.length / 3 + 32);
+      GZIPOutputStream gzipOut = new GZIPOutputStream(gzipped);
+      gzipOut.write(content);
+      gzipOut.close();
+      this.gzippedContent = gzipped.toByteArray();
+      String checksum = HashUtil.checksum(content);
+      this.etag = '"' + checksum + '"';
+      this.gzippedEtag = '"' + checksum + "-gzip\"";
+    }
+  }
 }
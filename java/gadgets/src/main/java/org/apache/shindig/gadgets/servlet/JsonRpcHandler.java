@@ -31,6 +31,7 @@ import org.apache.shindig.gadgets.spec.View;
 
 import com.google.common.collect.Lists;
 import com.google.inject.Inject;
+import com.google.inject.name.Named;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -55,7 +56,8 @@ public class JsonRpcHandler {
   private final UrlGenerator urlGenerator;
 
   @Inject
-  public JsonRpcHandler(ExecutorService executor, Processor processor, UrlGenerator urlGenerator) {
+  public JsonRpcHandler(@Named("shindig.executor.rpc") ExecutorService executor,
+      Processor processor, UrlGenerator urlGenerator) {
     this.executor = executor;
     this.processor = processor;
     this.urlGenerator = urlGenerator;
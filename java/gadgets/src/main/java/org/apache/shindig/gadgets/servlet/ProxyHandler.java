@@ -18,15 +18,22 @@
  */
 package org.apache.shindig.gadgets.servlet;
 
+import org.apache.shindig.common.cache.Cache;
+import org.apache.shindig.common.cache.CacheProvider;
 import org.apache.shindig.common.uri.Uri;
 import org.apache.shindig.gadgets.GadgetException;
 import org.apache.shindig.gadgets.LockedDomainService;
+import org.apache.shindig.gadgets.http.DefaultHttpCache;
+import org.apache.shindig.gadgets.http.HttpCacheKey;
 import org.apache.shindig.gadgets.http.HttpFetcher;
 import org.apache.shindig.gadgets.http.HttpRequest;
 import org.apache.shindig.gadgets.http.HttpResponse;
+import org.apache.shindig.gadgets.http.StreamingHttpFetcher;
+import org.apache.shindig.gadgets.rewrite.ContentRewriterFeatureFactory;
 import org.apache.shindig.gadgets.rewrite.ContentRewriterRegistry;
 
 import com.google.common.collect.Sets;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 
 import com.google.inject.Inject;
@@ -35,6 +42,7 @@ import com.google.inject.Singleton;
 import org.apache.commons.io.IOUtils;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
@@ -56,9 +64,18 @@ public class ProxyHandler extends ProxyBase {
       "vary", "expires", "date", "pragma", "cache-control"
   );
 
+  // Content that no rewriter touches, so it can be passed through as it arrives.
+  private static final List<String> STREAMED_CONTENT_TYPE_PREFIXES = ImmutableList.of(
+      "image/", "video/", "audio/", "application/octet-stream", "application/x-shockwave-flash"
+  );
+
+  static final String REWRITTEN_CACHE_NAME = "rewrittenResponses";
+
   private final HttpFetcher fetcher;
   private final LockedDomainService lockedDomainService;
   private final ContentRewriterRegistry contentRewriterRegistry;
+  private Cache<String, HttpResponse> rewrittenResponses;
+  private ContentRewriterFeatureFactory rewriterFeatureFactory;
 
   @Inject
   public ProxyHandler(HttpFetcher fetcher,
@@ -69,6 +86,19 @@ public class ProxyHandler extends ProxyBase {
     this.contentRewriterRegistry = contentRewriterRegistry;
   }
 
+  /**
+   * @param cacheProvider Provides the cache of responses as they were after rewriting, so
+   *     content that has already been rewritten is served without rewriting it again.
+   * @param rewriterFeatureFactory Supplies the rewriting rules the cached responses depend on.
+   */
+  @Inject(optional = true)
+  public void setRewrittenResponseCache(CacheProvider cacheProvider,
+      ContentRewriterFeatureFactory rewriterFeatureFactory) {
+    this.rewrittenResponses = cacheProvider.createCache(REWRITTEN_CACHE_NAME,
+        DefaultHttpCache.RESPONSE_WEIGHER);
+    this.rewriterFeatureFactory = rewriterFeatureFactory;
+  }
+
   private boolean getIgnoreCache(HttpServletRequest request) {
     String ignoreCache = request.getParameter(IGNORE_CACHE_PARAM);
     if (ignoreCache == null) {
@@ -119,6 +149,51 @@ public class ProxyHandler extends ProxyBase {
       return;
     }
 
+    checkDomain(request);
+
+    HttpRequest rcr = buildHttpRequest(request);
+    String rewrittenKey = getRewrittenKey(rcr);
+    HttpResponse results = getRewritten(rewrittenKey);
+    if (results == null) {
+      if (fetcher instanceof StreamingHttpFetcher && rcr.getRewriteMimeType() == null) {
+        PassThroughSink sink = new PassThroughSink(request, response, rcr);
+        results = ((StreamingHttpFetcher) fetcher).fetch(rcr, sink);
+        if (sink.streamed) {
+          return;
+        }
+      } else {
+        results = fetcher.fetch(rcr);
+      }
+      results = rewrite(rcr, rewrittenKey, results);
+    }
+
+    writeHeaders(request, response, rcr, results);
+    IOUtils.copy(results.getResponse(), response.getOutputStream());
+  }
+
+  /**
+   * Validates a proxy request and builds the remote request for it, for callers that combine
+   * several proxied responses and fetch them with {@link #fetchResponse(HttpRequest)}.
+   */
+  public HttpRequest createHttpRequest(HttpServletRequest request) throws GadgetException {
+    checkDomain(request);
+    return buildHttpRequest(request);
+  }
+
+  /**
+   * Fetches and rewrites the content for a proxy request without writing any of it out. This does
+   * not touch the servlet request, so it may run on any thread.
+   */
+  public HttpResponse fetchResponse(HttpRequest rcr) throws GadgetException {
+    String rewrittenKey = getRewrittenKey(rcr);
+    HttpResponse results = getRewritten(rewrittenKey);
+    if (results == null) {
+      results = rewrite(rcr, rewrittenKey, fetcher.fetch(rcr));
+    }
+    return results;
+  }
+
+  private void checkDomain(HttpServletRequest request) throws GadgetException {
     String host = request.getHeader("Host");
     if (!lockedDomainService.isSafeForOpenProxy(host)) {
       // Force embedded images and the like to their own domain to avoid XSS
@@ -128,13 +203,58 @@ public class ProxyHandler extends ProxyBase {
       logger.info(msg);
       throw new GadgetException(GadgetException.Code.INVALID_PARAMETER, msg);
     }
+  }
 
-    HttpRequest rcr = buildHttpRequest(request);
-    HttpResponse results = fetcher.fetch(rcr);
-    if (contentRewriterRegistry != null) {
-      results = contentRewriterRegistry.rewriteHttpResponse(rcr, results);
+  /**
+   * @return The key of the rewritten form of the response to this request, or null if the
+   *     rewritten response should not be cached. Everything the rewriters depend on besides the
+   *     fetched content is part of the key, so a change of rewriting rules misses the cache.
+   */
+  private String getRewrittenKey(HttpRequest rcr) {
+    if (rewrittenResponses == null || contentRewriterRegistry == null) {
+      return null;
+    }
+    HttpCacheKey key = new HttpCacheKey(rcr);
+    if (!key.isCacheable()) {
+      return null;
     }
+    key.set("container", rcr.getContainer());
+    key.set("gadget", rcr.getGadget() == null ? null : rcr.getGadget().toString());
+    key.set("rewriteMime", rcr.getRewriteMimeType());
+    key.set("refresh", Integer.toString(rcr.getCacheTtl()));
+    key.set("fingerprint", Integer.toString(rewriterFeatureFactory.get(rcr).getFingerprint()));
+    return key.toString();
+  }
+
+  private HttpResponse getRewritten(String rewrittenKey) {
+    if (rewrittenKey == null) {
+      return null;
+    }
+    HttpResponse rewritten = rewrittenResponses.getElement(rewrittenKey);
+    if (rewritten != null && rewritten.getCacheExpiration() > System.currentTimeMillis()) {
+      return rewritten;
+    }
+    return null;
+  }
 
+  private HttpResponse rewrite(HttpRequest rcr, String rewrittenKey, HttpResponse results) {
+    if (contentRewriterRegistry == null) {
+      return results;
+    }
+    HttpResponse rewritten = contentRewriterRegistry.rewriteHttpResponse(rcr, results);
+    // The rewritten response keeps the headers of the original, so it expires with it. Responses
+    // that no rewriter changed are in the HTTP cache already, so they aren't stored again.
+    if (rewrittenKey != null && rewritten != results &&
+        rewritten.getHttpStatusCode() == HttpResponse.SC_OK &&
+        !rewritten.isStrictNoCache() &&
+        rewritten.getCacheExpiration() > System.currentTimeMillis()) {
+      rewrittenResponses.addElement(rewrittenKey, rewritten);
+    }
+    return rewritten;
+  }
+
+  private void writeHeaders(HttpServletRequest request, HttpServletResponse response,
+      HttpRequest rcr, HttpResponse results) throws IOException {
     setResponseHeaders(request, response, results);
 
     for (Map.Entry<String, List<String>> entry : results.getHeaders().entrySet()) {
@@ -153,7 +273,51 @@ public class ProxyHandler extends ProxyBase {
     if (results.getHttpStatusCode() != HttpResponse.SC_OK) {
       response.sendError(results.getHttpStatusCode());
     }
+  }
 
-    IOUtils.copy(results.getResponse(), response.getOutputStream());
+  /**
+   * @return True if the content type of the response is one that is never rewritten.
+   */
+  private static boolean isStreamable(HttpResponse results) {
+    if (results.getHttpStatusCode() != HttpResponse.SC_OK) {
+      return false;
+    }
+    String contentType = results.getHeader("Content-Type");
+    if (contentType == null) {
+      return false;
+    }
+    contentType = contentType.toLowerCase();
+    for (String prefix : STREAMED_CONTENT_TYPE_PREFIXES) {
+      if (contentType.startsWith(prefix)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Sends content that won't be rewritten straight on to the client as it arrives from the origin
+   * server, rather than after all of it has been fetched.
+   */
+  private class PassThroughSink implements StreamingHttpFetcher.BodySink {
+    private final HttpServletRequest request;
+    private final HttpServletResponse response;
+    private final HttpRequest rcr;
+    boolean streamed;
+
+    PassThroughSink(HttpServletRequest request, HttpServletResponse response, HttpRequest rcr) {
+      this.request = request;
+      this.response = response;
+      this.rcr = rcr;
+    }
+
+    public OutputStream open(HttpResponse results) throws IOException {
+      if (!isStreamable(results)) {
+        return null;
+      }
+      writeHeaders(request, response, rcr, results);
+      streamed = true;
+      return response.getOutputStream();
+    }
   }
 }
@@ -21,6 +21,9 @@ package org.apache.shindig.gadgets;
 import static org.easymock.EasyMock.expect;
 import static org.easymock.classextension.EasyMock.replay;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.fail;
 
 import org.apache.shindig.common.ContainerConfig;
@@ -33,10 +36,14 @@ import org.apache.shindig.gadgets.http.HttpResponse;
 import org.apache.shindig.gadgets.http.HttpResponseBuilder;
 import org.apache.shindig.gadgets.spec.GadgetSpec;
 
+import com.google.common.collect.Lists;
+
 import org.easymock.EasyMock;
 import org.junit.Test;
 
 import java.net.URI;
+import java.util.List;
+import java.util.concurrent.Executor;
 
 /**
  * Tests for DefaultGadgetSpecFactory
@@ -213,6 +220,32 @@ public class DefaultGadgetSpecFactoryTest {
     assertEquals(10, capturingFetcher.request.getCacheTtl());
   }
 
+  @Test
+  public void expiredSpecRefreshedInBackground() throws Exception {
+    CapturingFetcher capturingFetcher = new CapturingFetcher();
+    final List<Runnable> refreshes = Lists.newArrayList();
+
+    // A negative refresh interval makes every cached spec expire immediately.
+    DefaultGadgetSpecFactory refreshingFactory
+        = new DefaultGadgetSpecFactory(capturingFetcher, cacheProvider, -1000);
+    refreshingFactory.setBackgroundRefresh(new Executor() {
+      public void execute(Runnable command) {
+        refreshes.add(command);
+      }
+    }, 100000);
+
+    GadgetSpec original = refreshingFactory.getGadgetSpec(SPEC_URL.toJavaUri(), false);
+    capturingFetcher.request = null;
+    GadgetSpec stale = refreshingFactory.getGadgetSpec(SPEC_URL.toJavaUri(), false);
+
+    assertSame(original, stale);
+    assertNull(capturingFetcher.request);
+    assertEquals(1, refreshes.size());
+
+    refreshes.get(0).run();
+    assertNotNull(capturingFetcher.request);
+  }
+
   @Test
   public void typeUrlNotFetchedRemote() throws Exception {
     HttpRequest request = createIgnoreCacheRequest();
@@ -28,6 +28,7 @@ import static org.junit.Assert.assertSame;
 import org.apache.shindig.common.cache.Cache;
 import org.apache.shindig.common.cache.CacheProvider;
 import org.apache.shindig.common.cache.LruCacheProvider;
+import org.apache.shindig.common.cache.SoftExpiringCache.TimestampedValue;
 import org.apache.shindig.common.uri.Uri;
 import org.apache.shindig.common.util.TimeSource;
 import org.apache.shindig.gadgets.http.HttpFetcher;
@@ -88,7 +89,7 @@ public class DefaultMessageBundleFactoryTest {
 
   private final HttpFetcher fetcher = EasyMock.createNiceMock(HttpFetcher.class);
   private final CacheProvider cacheProvider = new LruCacheProvider(10);
-  private final Cache<String, MessageBundle> cache
+  private final Cache<String, TimestampedValue<MessageBundle>> cache
       = cacheProvider.createCache(DefaultMessageBundleFactory.CACHE_NAME);
   private final DefaultMessageBundleFactory bundleFactory
       = new DefaultMessageBundleFactory(fetcher, cacheProvider, MAX_AGE);
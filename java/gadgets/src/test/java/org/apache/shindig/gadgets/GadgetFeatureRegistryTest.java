@@ -123,6 +123,21 @@ public class GadgetFeatureRegistryTest {
     assertSame(setFeatures, listFeatures);
   }
 
+  @Test
+  public void getUnknownLibrariesUsesCache() throws GadgetException {
+    registry.register(makeFeature(FEATURE_NAME, CONTENT, null));
+    List<String> unsupported = Lists.newArrayList();
+    Collection<GadgetFeature> first
+        = registry.getFeatures(Arrays.asList(FEATURE_NAME, "FAKE"), unsupported);
+    Collection<GadgetFeature> second
+        = registry.getFeatures(Arrays.asList(FEATURE_NAME, "FAKE"), unsupported);
+
+    assertEquals(Arrays.asList("FAKE", "FAKE"), unsupported);
+    assertSame(first, second);
+    assertSame(first, registry.getFeatures(Arrays.asList(FEATURE_NAME)));
+    assertEquals(1, registry.cache.size());
+  }
+
   @Test
   public void getAllFeatures() throws Exception {
     for (String feature : FEATURE_LIST) {
@@ -19,15 +19,140 @@ package org.apache.shindig.gadgets.http;
 
 import org.apache.shindig.common.cache.CacheProvider;
 import org.apache.shindig.common.cache.LruCacheProvider;
+import org.apache.shindig.common.uri.Uri;
+import org.apache.shindig.common.uri.UriBuilder;
+import org.apache.shindig.common.util.DateUtil;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
 
 public class BasicHttpFetcherTest extends AbstractHttpFetcherTest {
+  private HttpCache cache;
 
   @Before
   public void setUp() {
     CacheProvider cacheProvider = new LruCacheProvider(10);
-    HttpCache cache = new DefaultHttpCache(cacheProvider);
+    cache = new DefaultHttpCache(cacheProvider);
     fetcher = new BasicHttpFetcher(cache, Integer.MAX_VALUE);
   }
-}
\ No newline at end of file
+
+  @Test public void testNotModifiedRefreshesStaleResponse() throws Exception {
+    Uri uri = new UriBuilder(BASE_URL)
+        .addQueryParameter("status", "304")
+        .addQueryParameter("header", "Cache-Control=max-age=60")
+        .toUri();
+    HttpRequest request = new HttpRequest(uri);
+    HttpResponse stale = new HttpResponseBuilder()
+        .setResponseString("cached")
+        .addHeader("ETag", "\"foo\"")
+        .addHeader("Cache-Control", "max-age=60")
+        .addHeader("Date", DateUtil.formatDate(System.currentTimeMillis() - 3600 * 1000L))
+        .create();
+    cache.addResponse(new HttpCacheKey(request), request, stale);
+
+    HttpResponse response = fetcher.fetch(request);
+
+    assertEquals(200, response.getHttpStatusCode());
+    assertEquals("cached", response.getResponseAsString());
+    assertEquals("\"foo\"", response.getHeader("ETag"));
+    assertTrue(response.getCacheExpiration() > System.currentTimeMillis());
+  }
+
+  @Test public void testNotModifiedWithoutDateRefreshesDate() throws Exception {
+    HttpResponse stale = new HttpResponseBuilder()
+        .setResponseString("cached")
+        .addHeader("ETag", "\"foo\"")
+        .addHeader("Cache-Control", "max-age=60")
+        .addHeader("Date", DateUtil.formatDate(System.currentTimeMillis() - 3600 * 1000L))
+        .create();
+    HttpResponse notModified = new HttpResponseBuilder()
+        .setHttpStatusCode(HttpResponse.SC_NOT_MODIFIED)
+        .create();
+
+    HttpResponse response = BasicHttpFetcher.revalidate(stale, notModified);
+
+    assertEquals("cached", response.getResponseAsString());
+    assertTrue(response.getCacheExpiration() > System.currentTimeMillis());
+  }
+
+  @Test public void testResponseOverMaxObjSize() throws Exception {
+    fetcher = new BasicHttpFetcher(cache, 10);
+    Uri uri = new UriBuilder(BASE_URL)
+        .addQueryParameter("body", "this body is longer than ten bytes")
+        .toUri();
+
+    HttpResponse response = fetcher.fetch(new HttpRequest(uri));
+
+    assertEquals(HttpResponse.SC_BAD_GATEWAY, response.getHttpStatusCode());
+    assertEquals("", response.getResponseAsString());
+  }
+
+  @Test public void testResponseAtMaxObjSize() throws Exception {
+    fetcher = new BasicHttpFetcher(cache, 10);
+    Uri uri = new UriBuilder(BASE_URL).addQueryParameter("body", "ten bytes!").toUri();
+
+    HttpResponse response = fetcher.fetch(new HttpRequest(uri));
+
+    assertEquals(200, response.getHttpStatusCode());
+    assertEquals("ten bytes!", response.getResponseAsString());
+  }
+
+  @Test public void testUnknownContentEncodingPassedThrough() throws Exception {
+    Uri uri = new UriBuilder(BASE_URL)
+        .addQueryParameter("body", "not decoded")
+        .addQueryParameter("header", "Content-Encoding=identity")
+        .toUri();
+
+    HttpResponse response = fetcher.fetch(new HttpRequest(uri));
+
+    assertEquals(200, response.getHttpStatusCode());
+    assertEquals("not decoded", response.getResponseAsString());
+  }
+
+  @Test public void testStreamedResponseCached() throws Exception {
+    Uri uri = new UriBuilder(BASE_URL)
+        .addQueryParameter("body", "streamed")
+        .addQueryParameter("header", "Cache-Control=max-age=60")
+        .toUri();
+    HttpRequest request = new HttpRequest(uri);
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    HttpResponse response = fetcher.fetch(request, new StreamingHttpFetcher.BodySink() {
+      public OutputStream open(HttpResponse head) {
+        return out;
+      }
+    });
+
+    assertEquals("streamed", out.toString("UTF-8"));
+    assertEquals("streamed", response.getResponseAsString());
+    assertEquals("streamed",
+        cache.getResponse(new HttpCacheKey(request), request).getResponseAsString());
+  }
+
+  @Test public void testStreamedResponseOverMaxObjSizeNotCached() throws Exception {
+    fetcher = new BasicHttpFetcher(cache, 10);
+    Uri uri = new UriBuilder(BASE_URL)
+        .addQueryParameter("body", "this body is longer than ten bytes")
+        .addQueryParameter("header", "Cache-Control=max-age=60")
+        .toUri();
+    HttpRequest request = new HttpRequest(uri);
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    HttpResponse response = fetcher.fetch(request, new StreamingHttpFetcher.BodySink() {
+      public OutputStream open(HttpResponse head) {
+        return out;
+      }
+    });
+
+    assertEquals("this body is longer than ten bytes", out.toString("UTF-8"));
+    assertEquals(200, response.getHttpStatusCode());
+    assertEquals(0, response.getContentLength());
+    assertNull(cache.getResponse(new HttpCacheKey(request), request));
+  }
+}
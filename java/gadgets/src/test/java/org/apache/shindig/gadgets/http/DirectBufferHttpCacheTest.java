@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shindig.gadgets.http;
+
+import org.apache.shindig.common.uri.Uri;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+
+/**
+ * Tests for DirectBufferHttpCache
+ */
+public class DirectBufferHttpCacheTest extends TestCase {
+  private static final int PAGE_SIZE = DirectBufferHttpCache.PAGE_SIZE;
+
+  private final DirectBufferHttpCache cache = new DirectBufferHttpCache(PAGE_SIZE * 4);
+
+  private static HttpRequest createRequest(String url) {
+    return new HttpRequest(Uri.parse(url));
+  }
+
+  private static HttpResponse createResponse(int length, byte fill) {
+    byte[] body = new byte[length];
+    Arrays.fill(body, fill);
+    return new HttpResponseBuilder()
+        .setResponse(body)
+        .addHeader("Content-Type", "image/png")
+        .setCacheTtl(1000)
+        .setMetadata("foo", "bar")
+        .create();
+  }
+
+  private HttpResponse add(String url, HttpResponse response) {
+    HttpRequest request = createRequest(url);
+    return cache.addResponse(new HttpCacheKey(request), request, response);
+  }
+
+  private HttpResponse get(String url) {
+    HttpRequest request = createRequest(url);
+    return cache.getResponse(new HttpCacheKey(request), request);
+  }
+
+  public void testRoundTrip() {
+    HttpResponse added = add("http://example.org/a", createResponse(PAGE_SIZE + 10, (byte) 1));
+    HttpResponse cached = get("http://example.org/a");
+    assertEquals(added, cached);
+    assertEquals("bar", cached.getMetadata().get("foo"));
+    assertEquals(PAGE_SIZE * 2, cache.getUsedBytes());
+  }
+
+  public void testEmptyBody() {
+    HttpResponse added = add("http://example.org/a", createResponse(0, (byte) 1));
+    assertEquals(added, get("http://example.org/a"));
+    assertEquals(0, cache.getUsedBytes());
+  }
+
+  public void testEvictsLeastRecentlyUsedByBytes() {
+    add("http://example.org/a", createResponse(PAGE_SIZE * 2, (byte) 1));
+    add("http://example.org/b", createResponse(PAGE_SIZE, (byte) 2));
+    add("http://example.org/c", createResponse(PAGE_SIZE, (byte) 3));
+    get("http://example.org/a");
+    HttpResponse added = add("http://example.org/d", createResponse(PAGE_SIZE, (byte) 4));
+
+    assertNotNull(get("http://example.org/a"));
+    assertNull(get("http://example.org/b"));
+    assertNotNull(get("http://example.org/c"));
+    assertEquals(added, get("http://example.org/d"));
+    assertEquals(PAGE_SIZE * 4, cache.getUsedBytes());
+  }
+
+  public void testTooLargeNotCached() {
+    add("http://example.org/a", createResponse(PAGE_SIZE * 4 + 1, (byte) 1));
+    assertNull(get("http://example.org/a"));
+    assertEquals(0, cache.getUsedBytes());
+  }
+
+  public void testReplaceReleasesPages() {
+    add("http://example.org/a", createResponse(PAGE_SIZE * 3, (byte) 1));
+    HttpResponse added = add("http://example.org/a", createResponse(PAGE_SIZE, (byte) 2));
+    assertEquals(added, get("http://example.org/a"));
+    assertEquals(PAGE_SIZE, cache.getUsedBytes());
+  }
+
+  public void testRemove() {
+    HttpResponse added = add("http://example.org/a", createResponse(10, (byte) 1));
+    HttpRequest request = createRequest("http://example.org/a");
+    assertEquals(added, cache.removeResponse(new HttpCacheKey(request)));
+    assertNull(get("http://example.org/a"));
+    assertEquals(0, cache.getUsedBytes());
+  }
+}
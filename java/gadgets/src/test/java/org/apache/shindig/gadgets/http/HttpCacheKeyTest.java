@@ -82,6 +82,19 @@ public class HttpCacheKeyTest {
     	key.toString());
   }
 
+  @Test
+  public void testModifiedAfterToString() {
+    HttpCacheKey key = new HttpCacheKey(new HttpRequest(target));
+    String original = key.toString();
+    assertSame(original, key.toString());
+    key.set("a", "a");
+    assertEquals(
+        "[{\"a\":\"a\"},{\"method\":\"GET\"},{\"url\":\"http://www.example.com/\"}]",
+        key.toString());
+    key.remove("a");
+    assertEquals(original, key.toString());
+  }
+
   @Test
   public void testWeirdChars() throws Exception {
     final int CHARS_TO_TEST = 2000;
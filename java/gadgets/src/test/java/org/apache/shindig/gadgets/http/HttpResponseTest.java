@@ -79,6 +79,22 @@ public class HttpResponseTest extends TestCase {
     assertEquals(UTF8_STRING, response.getResponseAsString());
   }
 
+  public void testResponseReaderStripsBom() throws Exception {
+    HttpResponse response = new HttpResponseBuilder()
+        .addHeader("Content-Type", "text/plain; charset=UTF-8")
+        .setResponse(UTF8_DATA)
+        .create();
+    assertEquals(UTF8_STRING, IOUtils.toString(response.getResponseReader()));
+  }
+
+  public void testResponseReaderDecodesCharset() throws Exception {
+    HttpResponse response = new HttpResponseBuilder()
+        .addHeader("Content-Type", "text/plain; charset=BIG5")
+        .setResponse(BIG5_DATA)
+        .create();
+    assertEquals(BIG5_STRING, IOUtils.toString(response.getResponseReader()));
+  }
+
   public void testEncodingDetectionLatin1() throws Exception {
     // Input is a basic latin-1 string with 1 non-UTF8 compatible char.
     HttpResponse response = new HttpResponseBuilder()
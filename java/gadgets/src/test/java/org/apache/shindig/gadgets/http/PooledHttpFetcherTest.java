@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shindig.gadgets.http;
+
+import org.apache.shindig.common.cache.CacheProvider;
+import org.apache.shindig.common.cache.LruCacheProvider;
+import org.apache.shindig.common.uri.Uri;
+import org.apache.shindig.common.uri.UriBuilder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PooledHttpFetcherTest extends AbstractHttpFetcherTest {
+
+  private PooledHttpFetcher pooledFetcher;
+
+  @Before
+  public void setUp() {
+    CacheProvider cacheProvider = new LruCacheProvider(10);
+    HttpCache cache = new DefaultHttpCache(cacheProvider);
+    pooledFetcher = new PooledHttpFetcher(cache);
+    pooledFetcher.setMaxConnections(2);
+    pooledFetcher.setMaxConnectionsPerHost(1);
+    fetcher = pooledFetcher;
+  }
+
+  @Test
+  public void hostSlotsDroppedWhenIdle() throws Exception {
+    Uri uri = new UriBuilder(BASE_URL).addQueryParameter("body", "idle").toUri();
+    HttpResponse response = fetcher.fetch(new HttpRequest(uri));
+    assertEquals(200, response.getHttpStatusCode());
+    assertTrue(pooledFetcher.hostSlots.isEmpty());
+  }
+
+  @Test
+  public void slotWaitsShareOneConnectTimeout() throws Exception {
+    pooledFetcher.setMaxConnections(0);
+    pooledFetcher.setConnectTimeout(400);
+    Uri uri = new UriBuilder(BASE_URL).addQueryParameter("body", "busy").toUri();
+
+    // The host's only slot frees up just before the timeout; the total never does.
+    final PooledHttpFetcher.HostSlots busy = new PooledHttpFetcher.HostSlots(1);
+    busy.permits.acquire();
+    busy.users++;
+    pooledFetcher.hostSlots.put(uri.getAuthority(), busy);
+    Thread releaser = new Thread() {
+      @Override
+      public void run() {
+        try {
+          Thread.sleep(300);
+        } catch (InterruptedException e) {
+          // Release early
+        }
+        busy.permits.release();
+      }
+    };
+    releaser.start();
+
+    long start = System.currentTimeMillis();
+    fetcher.fetch(new HttpRequest(uri));
+    long elapsed = System.currentTimeMillis() - start;
+    releaser.join();
+
+    assertTrue("Waited " + elapsed + "ms", elapsed < 600);
+  }
+}
@@ -21,16 +21,19 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import org.apache.shindig.common.testing.TestExecutorService;
+import org.apache.shindig.common.util.MBeanRegistry;
 import org.apache.shindig.gadgets.GadgetContext;
 import org.apache.shindig.gadgets.spec.GadgetSpec;
 import static org.junit.Assert.*;
 import org.junit.Test;
 
+import java.lang.management.ManagementFactory;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Tests for FuturePreloaderService.
@@ -107,8 +110,9 @@ public class ConcurrentPreloaderServiceTest {
     preloader.tasks.add(second);
     preloader.tasks.add(third);
 
-    PreloaderService service = new ConcurrentPreloaderService(Executors.newFixedThreadPool(5),
-        Arrays.<Preloader>asList(preloader));
+    ConcurrentPreloaderService service = new ConcurrentPreloaderService(
+        Executors.newFixedThreadPool(5), Arrays.<Preloader>asList(preloader));
+    service.setTimeout(0);
 
     service.preload(null, null, PreloaderService.PreloadPhase.HTML_RENDER);
 
@@ -132,8 +136,9 @@ public class ConcurrentPreloaderServiceTest {
         new TestPreloadCallable(new DataPreload(PRELOAD_STRING_KEY, PRELOAD_STRING_VALUE));
     preloader.tasks.add(callable);
 
-    PreloaderService service = new ConcurrentPreloaderService(Executors.newCachedThreadPool(),
-        Arrays.<Preloader>asList(preloader));
+    ConcurrentPreloaderService service = new ConcurrentPreloaderService(
+        Executors.newCachedThreadPool(), Arrays.<Preloader>asList(preloader));
+    service.setTimeout(0);
 
     service.preload(null, null, PreloaderService.PreloadPhase.HTML_RENDER);
 
@@ -141,6 +146,83 @@ public class ConcurrentPreloaderServiceTest {
         Thread.currentThread(), callable.executedThread);
   }
 
+  @Test
+  public void preloadsWithDeadlineNotRunInCurrentThread() throws Exception {
+    TestPreloadCallable callable =
+        new TestPreloadCallable(new DataPreload(PRELOAD_STRING_KEY, PRELOAD_STRING_VALUE));
+    preloader.tasks.add(callable);
+
+    PreloaderService service = new ConcurrentPreloaderService(Executors.newCachedThreadPool(),
+        Arrays.<Preloader>asList(preloader));
+
+    Preloads preloads = service.preload(null, null, PreloaderService.PreloadPhase.HTML_RENDER);
+
+    assertEquals(ImmutableMap.of(PRELOAD_STRING_KEY, PRELOAD_STRING_VALUE), getAll(preloads));
+    assertNotSame(Thread.currentThread(), callable.executedThread);
+  }
+
+  @Test
+  public void rejectedPreloadFails() throws Exception {
+    TestPreloadCallable callable =
+        new TestPreloadCallable(new DataPreload(PRELOAD_STRING_KEY, PRELOAD_STRING_VALUE));
+    preloader.tasks.add(callable);
+
+    ConcurrentPreloaderService service = new ConcurrentPreloaderService(
+        new TestExecutorService() {
+          @Override
+          public void execute(Runnable command) {
+            throw new RejectedExecutionException();
+          }
+        }, Arrays.<Preloader>asList(preloader));
+
+    Preloads preloads = service.preload(null, null, PreloaderService.PreloadPhase.HTML_RENDER);
+
+    try {
+      preloads.getData().iterator().next().toJson();
+      fail("Rejected preload should have failed");
+    } catch (PreloadException e) {
+      // good
+    }
+    assertNull("Rejected preload ran", callable.executedThread);
+    PreloadStats stats = service.getStats().get(TestPreloader.class.getName());
+    assertEquals(1, stats.getRejectedCount());
+    assertEquals(0, stats.getCompletedCount());
+  }
+
+  @Test
+  public void preloadLatencyRecorded() throws Exception {
+    preloader.tasks.add(new TestPreloadCallable(
+        new DataPreload(PRELOAD_STRING_KEY, PRELOAD_STRING_VALUE)));
+    preloader.tasks.add(new TestPreloadCallable(
+        new DataPreload(PRELOAD_NUMERIC_KEY, PRELOAD_NUMERIC_VALUE)));
+
+    ConcurrentPreloaderService service = new ConcurrentPreloaderService(
+        new TestExecutorService(), Arrays.<Preloader>asList(preloader));
+
+    getAll(service.preload(null, null, PreloaderService.PreloadPhase.HTML_RENDER));
+
+    PreloadStats stats = service.getStats().get(TestPreloader.class.getName());
+    assertEquals(2, stats.getCompletedCount());
+    assertEquals(0, stats.getTimedOutCount());
+  }
+
+  @Test
+  public void preloadLatencyPublished() throws Exception {
+    preloader.tasks.add(new TestPreloadCallable(
+        new DataPreload(PRELOAD_STRING_KEY, PRELOAD_STRING_VALUE)));
+
+    ConcurrentPreloaderService service = new ConcurrentPreloaderService(
+        new TestExecutorService(), Arrays.<Preloader>asList(preloader));
+    service.setJmxEnabled(true);
+
+    getAll(service.preload(null, null, PreloaderService.PreloadPhase.HTML_RENDER));
+
+    Object completed = ManagementFactory.getPlatformMBeanServer().getAttribute(
+        MBeanRegistry.getObjectName("Preloader", TestPreloader.class.getName()),
+        "CompletedCount");
+    assertEquals(1L, completed);
+  }
+
   private static class TestPreloader implements Preloader {
     private final Collection<Callable<PreloadedData>> tasks = Lists.newArrayList();
 
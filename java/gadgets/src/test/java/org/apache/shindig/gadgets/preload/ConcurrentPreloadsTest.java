@@ -24,8 +24,10 @@ import org.junit.Test;
 
 import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -103,6 +105,38 @@ public class ConcurrentPreloadsTest {
     iterator.next();
   }
 
+  @Test
+  public void getDataPastDeadlineTimesOut() throws Exception {
+    ConcurrentPreloads preloads = new ConcurrentPreloads(System.currentTimeMillis() + 10);
+    FutureTask<PreloadedData> neverRun = new FutureTask<PreloadedData>(
+        new Callable<PreloadedData>() {
+          public PreloadedData call() {
+            return null;
+          }
+        });
+    preloads.add(TestFuture.returnsNormal("foo"));
+    preloads.add(neverRun);
+
+    Iterator<PreloadedData> iterator = preloads.getData().iterator();
+    assertEquals(TestFuture.expectedResult("foo"), iterator.next().toJson());
+    try {
+      iterator.next().toJson();
+      fail();
+    } catch (PreloadException pe) {
+      assertTrue(neverRun.isCancelled());
+    }
+
+    // Reading the data again still reports the timeout.
+    iterator = preloads.getData().iterator();
+    iterator.next();
+    try {
+      iterator.next().toJson();
+      fail();
+    } catch (PreloadException pe) {
+      // good
+    }
+  }
+
   private static class TestFuture implements Future<PreloadedData> {
     private boolean throwsInterrupted;
     private boolean throwsExecution;
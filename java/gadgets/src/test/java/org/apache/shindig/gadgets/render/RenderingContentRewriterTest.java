@@ -26,6 +26,7 @@ import com.google.common.collect.Sets;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
 import org.apache.shindig.common.ContainerConfig;
+import org.apache.shindig.common.cache.LruCacheProvider;
 import org.apache.shindig.common.PropertiesModule;
 import org.apache.shindig.common.uri.Uri;
 import org.apache.shindig.common.xml.XmlUtil;
@@ -42,6 +43,7 @@ import org.apache.shindig.gadgets.spec.GadgetSpec;
 import org.apache.shindig.gadgets.spec.LocaleSpec;
 import org.apache.shindig.gadgets.spec.MessageBundle;
 import org.apache.shindig.gadgets.spec.View;
+import org.apache.shindig.gadgets.variables.Substitutions;
 import static org.easymock.EasyMock.expect;
 import org.easymock.classextension.EasyMock;
 import org.easymock.classextension.IMocksControl;
@@ -387,6 +389,32 @@ public class RenderingContentRewriterTest {
         rewritten.contains("<script src=\"http://example.org/external.js\">"));
   }
 
+  @Test
+  public void featureScriptsFromCacheMatchFirstRender() throws Exception {
+    String gadgetXml =
+      "<Module><ModulePrefs title=''>" +
+      "  <Require feature='foo'/>" +
+      "  <Require feature='bar'/>" +
+      "</ModulePrefs>" +
+      "<Content type='html'/>" +
+      "</Module>";
+
+    Gadget gadget = makeGadgetWithSpec(gadgetXml);
+
+    featureRegistry.addInline("foo", "foo_content();");
+    featureRegistry.addExternal("bar", "http://example.org/external.js");
+    rewriter.setCacheProvider(new LruCacheProvider(10));
+    control.replay();
+
+    String first = rewrite(gadget, "");
+    String second = rewrite(gadget, "");
+
+    assertEquals(first, second);
+    assertTrue("Requested scripts not inlined.", second.contains("foo_content();"));
+    assertTrue("External file not referenced.",
+        second.contains("<script src=\"http://example.org/external.js\">"));
+  }
+
   private JSONObject getConfigJson(String content) throws JSONException {
     Pattern prefsPattern
         = Pattern.compile("(?:.*)gadgets\\.config\\.init\\((.*)\\);(?:.*)", Pattern.DOTALL);
@@ -646,6 +674,97 @@ public class RenderingContentRewriterTest {
     assertEquals(0, json.length());
   }
 
+  private static Preloads makePreloads(final String key, final Object value) {
+    return new Preloads() {
+      public Collection<PreloadedData> getData() {
+        PreloadedData preloadedData = new PreloadedData() {
+          public Map<String, Object> toJson() {
+            Map<String, Object> data = Maps.newHashMap();
+            data.put(key, value);
+            return data;
+          }
+        };
+        return Lists.newArrayList(preloadedData);
+      }
+    };
+  }
+
+  @Test
+  public void templateFilledWithPreloadsOfEachRender() throws Exception {
+    control.replay();
+    String uncached = rewrite(makeDefaultGadget().setPreloads(makePreloads("key", "second")),
+        BODY_CONTENT);
+
+    rewriter.setCacheProvider(new LruCacheProvider(10));
+    String first = rewrite(makeDefaultGadget().setPreloads(makePreloads("key", "first")),
+        BODY_CONTENT);
+    String second = rewrite(makeDefaultGadget().setPreloads(makePreloads("key", "second")),
+        BODY_CONTENT);
+
+    assertEquals("first", getPreloadedJson(first).get("key"));
+    assertEquals("second", getPreloadedJson(second).get("key"));
+    assertEquals(uncached, second);
+  }
+
+  private static MessageBundle makeMessageBundle(String message) throws Exception {
+    return new MessageBundle(XmlUtil.parse(
+        "<messagebundle><msg name='one'>" + message + "</msg></messagebundle>"));
+  }
+
+  @Test
+  public void templateFilledWithCurrentMessageBundle() throws Exception {
+    control.replay();
+    rewriter.setCacheProvider(new LruCacheProvider(10));
+
+    messageBundleFactory.bundle = makeMessageBundle("first");
+    String first = rewrite(makeDefaultGadget(), BODY_CONTENT);
+    messageBundleFactory.bundle = makeMessageBundle("second");
+    String second = rewrite(makeDefaultGadget(), BODY_CONTENT);
+
+    assertTrue(first.contains("gadgets.Prefs.setMessages_({\"one\":\"first\"});"));
+    assertTrue(second.contains("gadgets.Prefs.setMessages_({\"one\":\"second\"});"));
+  }
+
+  @Test
+  public void templateFilledWithSubstitutedDefaultPrefs() throws Exception {
+    control.replay();
+    rewriter.setCacheProvider(new LruCacheProvider(10));
+    String gadgetXml =
+      "<Module><ModulePrefs title=''/>" +
+      "<UserPref name='pref' default_value='__MODULE_ID__'/>" +
+      "<Content type='html'/>" +
+      "</Module>";
+    GadgetSpec spec = new GadgetSpec(SPEC_URL, gadgetXml);
+
+    String first = rewrite(makeGadgetWithModuleId(spec, "1"), BODY_CONTENT);
+    String second = rewrite(makeGadgetWithModuleId(spec, "2"), BODY_CONTENT);
+
+    assertTrue(first.contains("gadgets.Prefs.setDefaultPrefs_({\"pref\":\"1\"});"));
+    assertTrue(second.contains("gadgets.Prefs.setDefaultPrefs_({\"pref\":\"2\"});"));
+  }
+
+  private static Gadget makeGadgetWithModuleId(GadgetSpec spec, String moduleId) {
+    Substitutions substitutions = new Substitutions();
+    substitutions.addSubstitution(Substitutions.Type.MODULE, "ID", moduleId);
+    return new Gadget()
+        .setContext(new GadgetContext())
+        .setPreloads(new NullPreloads())
+        .setSpec(spec.substitute(substitutions));
+  }
+
+  @Test
+  public void contentContainingPlaceholderRenderedWithoutTemplate() throws Exception {
+    control.replay();
+    rewriter.setCacheProvider(new LruCacheProvider(10));
+    String content = "<p>" + RenderingContentRewriter.CONFIG_HOLE + "</p>";
+
+    String rewritten = rewrite(makeDefaultGadget(), content);
+
+    assertTrue(rewritten.contains(content));
+    getConfigJson(rewritten);
+    assertEquals(0, getPreloadedJson(rewritten).length());
+  }
+
   private String getBaseElement(String content) {
     Matcher matcher = DOCUMENT_SPLIT_PATTERN.matcher(content);
     assertTrue("Output is not valid HTML.", matcher.matches());
@@ -709,7 +828,12 @@ public class RenderingContentRewriterTest {
    * Simple message bundle factory -- only honors inline bundles.
    */
   private static class FakeMessageBundleFactory implements MessageBundleFactory {
+    private MessageBundle bundle;
+
     public MessageBundle getBundle(GadgetSpec spec, Locale locale, boolean ignoreCache) {
+      if (bundle != null) {
+        return bundle;
+      }
       LocaleSpec localeSpec = spec.getModulePrefs().getLocale(locale);
       if (localeSpec == null) {
         return MessageBundle.EMPTY;
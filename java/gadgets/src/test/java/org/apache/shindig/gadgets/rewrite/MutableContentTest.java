@@ -19,13 +19,18 @@
 package org.apache.shindig.gadgets.rewrite;
 
 import org.apache.shindig.common.PropertiesModule;
+import org.apache.shindig.gadgets.http.HttpResponse;
 import org.apache.shindig.gadgets.parse.GadgetHtmlParser;
 import org.apache.shindig.gadgets.parse.ParseModule;
 
 import com.google.inject.Guice;
 import com.google.inject.Injector;
 
+import org.apache.commons.io.IOUtils;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import org.junit.Before;
@@ -34,6 +39,7 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 
 public class MutableContentTest {
+  private GadgetHtmlParser parser;
   private MutableContent mhc;
   
   @Before
@@ -42,7 +48,8 @@ public class MutableContentTest {
     // sufficient given that this test doesn't exercise the parser extensively at all,
     // instead focusing on the additional utility provided by MutableHtmlContent
     Injector injector = Guice.createInjector(new ParseModule(), new PropertiesModule());
-    mhc = new MutableContent(injector.getInstance(GadgetHtmlParser.class), "DEFAULT VIEW");
+    parser = injector.getInstance(GadgetHtmlParser.class);
+    mhc = new MutableContent(parser, "DEFAULT VIEW");
   }
   
   @Test
@@ -60,6 +67,15 @@ public class MutableContentTest {
     assertSame(document, mhc.getDocument());
   }
   
+  @Test
+  public void contentReaderFollowsContent() throws Exception {
+    MutableContent fromResponse = new MutableContent(parser, new HttpResponse("RESPONSE"));
+    assertEquals("RESPONSE", IOUtils.toString(fromResponse.getContentReader()));
+
+    fromResponse.setContent("NEW CONTENT");
+    assertEquals("NEW CONTENT", IOUtils.toString(fromResponse.getContentReader()));
+  }
+
   @Test
   public void modifyContentReflectedInTree() throws Exception {
     mhc.setContent("NEW CONTENT");
@@ -85,4 +101,22 @@ public class MutableContentTest {
     // GadgetHtmlNode hasn't changed because string hasn't changed
     assertSame(document, mhc.getDocument());
   }
+
+  @Test
+  public void readOnlyDocumentSharedUntilEdited() throws Exception {
+    MutableContent other = new MutableContent(parser, "DEFAULT VIEW");
+    Document shared = mhc.getReadOnlyDocument();
+    assertSame(shared, other.getReadOnlyDocument());
+
+    Document document = mhc.getDocument();
+    assertNotSame(shared, document);
+    assertSame(document, mhc.getReadOnlyDocument());
+
+    document.getFirstChild().getFirstChild().setTextContent("FOO CONTENT");
+    MutableContent.notifyEdit(document);
+    assertTrue(mhc.getContent().contains("FOO CONTENT"));
+    assertEquals("DEFAULT VIEW", other.getContent());
+    assertFalse(other.getReadOnlyDocument().getFirstChild().getTextContent()
+        .contains("FOO CONTENT"));
+  }
 }
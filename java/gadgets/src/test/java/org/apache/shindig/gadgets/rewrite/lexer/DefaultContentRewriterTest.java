@@ -0,0 +1,60 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+package org.apache.shindig.gadgets.rewrite.lexer;
+
+import static org.easymock.EasyMock.expect;
+
+import org.apache.shindig.common.uri.Uri;
+import org.apache.shindig.gadgets.GadgetSpecFactory;
+import org.apache.shindig.gadgets.http.HttpRequest;
+import org.apache.shindig.gadgets.http.HttpResponse;
+import org.apache.shindig.gadgets.http.HttpResponseBuilder;
+import org.apache.shindig.gadgets.rewrite.BaseRewriterTestCase;
+import org.apache.shindig.gadgets.rewrite.MutableContent;
+
+public class DefaultContentRewriterTest extends BaseRewriterTestCase {
+  private DefaultContentRewriter rewriter;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    GadgetSpecFactory specFactory = mock(GadgetSpecFactory.class);
+    expect(specFactory.getGadgetSpec(SPEC_URL.toJavaUri(), false))
+        .andReturn(createSpecWithRewrite(".*", "", "HTTP", tags)).anyTimes();
+    replay();
+    rewriter = new DefaultContentRewriter(specFactory, ".*", "", "HTTP",
+        "embed,img,script,link,style", DEFAULT_PROXY_BASE, DEFAULT_CONCAT_BASE);
+  }
+
+  public void testHttpResponseRewrittenInResponseEncoding() throws Exception {
+    String body = "<p>caf\u00e9 \u2603</p><img src=\"http://www.example.org/a.png\">";
+    HttpRequest request = new HttpRequest(Uri.parse("http://www.example.org/dir/page.html"))
+        .setGadget(SPEC_URL);
+    HttpResponse response = new HttpResponseBuilder()
+        .setHeader("Content-Type", "text/html; charset=UTF-8")
+        .setResponse(body.getBytes("UTF-8"))
+        .create();
+    MutableContent content = new MutableContent(parser, response);
+
+    assertNotNull(rewriter.rewrite(request, response, content));
+
+    String rewritten = content.getContent();
+    assertTrue(rewritten.startsWith("<p>caf\u00e9 \u2603</p>"));
+    assertTrue(rewritten.contains(DEFAULT_PROXY_BASE));
+  }
+}
@@ -0,0 +1,203 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+package org.apache.shindig.gadgets.servlet;
+
+import static org.easymock.EasyMock.expect;
+
+import org.apache.shindig.common.cache.LruCacheProvider;
+import org.apache.shindig.gadgets.GadgetException;
+import org.apache.shindig.gadgets.http.HttpFetcher;
+import org.apache.shindig.gadgets.http.HttpRequest;
+import org.apache.shindig.gadgets.http.HttpResponse;
+
+import org.easymock.IAnswer;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Tests for ConcatProxyServlet.
+ */
+public class ConcatProxyServletTest extends ServletTestFixture {
+  private static final String REQUEST_DOMAIN = "example.org";
+  private static final String URL_ONE = "http://example.org/one.js";
+  private static final String URL_TWO = "http://example.org/two.js";
+  private static final String URL_THREE = "http://example.org/three.js";
+
+  private final ConcatProxyServlet servlet = new ConcatProxyServlet();
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+
+  // Each part waits until the next one has been requested, so the parts can only all be fetched
+  // if they are fetched concurrently. The last part can't wait.
+  private final CountDownLatch twoRequested = new CountDownLatch(1);
+  private final CountDownLatch threeRequested = new CountDownLatch(1);
+  private final AtomicInteger fetchCount = new AtomicInteger();
+  private String ifNoneMatch;
+
+  private final HttpFetcher parallelFetcher = new HttpFetcher() {
+    public HttpResponse fetch(HttpRequest request) throws GadgetException {
+      fetchCount.incrementAndGet();
+      String url = request.getUri().toString();
+      try {
+        if (URL_ONE.equals(url)) {
+          twoRequested.await(5, TimeUnit.SECONDS);
+          return new HttpResponse("one");
+        }
+        if (URL_TWO.equals(url)) {
+          twoRequested.countDown();
+          threeRequested.await(5, TimeUnit.SECONDS);
+          return new HttpResponse("two");
+        }
+        threeRequested.countDown();
+        return new HttpResponse("three");
+      } catch (InterruptedException e) {
+        throw new GadgetException(GadgetException.Code.FAILED_TO_RETRIEVE_CONTENT, e);
+      }
+    }
+  };
+
+  @Override
+  public void setUp() {
+    servlet.setProxyHandler(new ProxyHandler(parallelFetcher, lockedDomainService, null));
+    expect(request.getParameter("1")).andReturn(URL_ONE).anyTimes();
+    expect(request.getParameter("2")).andReturn(URL_TWO).anyTimes();
+    expect(request.getParameter("3")).andReturn(URL_THREE).anyTimes();
+    expect(request.getHeader("Host")).andReturn(REQUEST_DOMAIN).anyTimes();
+    expect(lockedDomainService.isSafeForOpenProxy(REQUEST_DOMAIN)).andReturn(true).anyTimes();
+    expect(request.getHeader("If-None-Match")).andAnswer(new IAnswer<String>() {
+      public String answer() {
+        return ifNoneMatch;
+      }
+    }).anyTimes();
+  }
+
+  @Override
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  private static String part(String url, String content) {
+    return "/* ---- Start " + url + " ---- */\r\n" + content +
+        "/* ---- End " + url + " ---- */\r\n";
+  }
+
+  public void testPartsFetchedConcurrentlyAndWrittenInOrder() throws Exception {
+    replay();
+    servlet.setExecutor(executor);
+
+    servlet.doGet(request, recorder);
+
+    assertEquals(HttpResponse.SC_OK, recorder.getHttpStatusCode());
+    assertEquals(part(URL_ONE, "one") + part(URL_TWO, "two") + part(URL_THREE, "three"),
+        recorder.getResponseAsString());
+  }
+
+  public void testPartsNotReadyByDeadlineReplacedWithError() throws Exception {
+    replay();
+    servlet.setExecutor(executor);
+    servlet.setMaxParallelFetches(1);
+    servlet.setTimeout(100);
+
+    servlet.doGet(request, recorder);
+
+    // Only one part may be fetched at a time, so the first can't finish before the deadline, and
+    // the others are never started.
+    String timedOut = "/* ---- Error 504, Timed out ---- */\r\n";
+    assertEquals(part(URL_ONE, timedOut) + part(URL_TWO, timedOut) + part(URL_THREE, timedOut),
+        recorder.getResponseAsString());
+    assertEquals(1, fetchCount.get());
+  }
+
+  public void testAssembledOutputCached() throws Exception {
+    replay();
+    servlet.setExecutor(executor);
+    servlet.setCacheProvider(new LruCacheProvider(10));
+    String expected = part(URL_ONE, "one") + part(URL_TWO, "two") + part(URL_THREE, "three");
+
+    servlet.doGet(request, recorder);
+    HttpServletResponseRecorder cachedRecorder = new HttpServletResponseRecorder(response);
+    servlet.doGet(request, cachedRecorder);
+
+    assertEquals(3, fetchCount.get());
+    assertEquals(expected, recorder.getResponseAsString());
+    assertEquals(expected, cachedRecorder.getResponseAsString());
+    assertNotNull(cachedRecorder.getHeader("ETag"));
+  }
+
+  public void testCachedOutputNotModified() throws Exception {
+    replay();
+    servlet.setExecutor(executor);
+    servlet.setCacheProvider(new LruCacheProvider(10));
+
+    servlet.doGet(request, recorder);
+    HttpServletResponseRecorder cachedRecorder = new HttpServletResponseRecorder(response);
+    servlet.doGet(request, cachedRecorder);
+    ifNoneMatch = cachedRecorder.getHeader("ETag");
+    HttpServletResponseRecorder notModifiedRecorder = new HttpServletResponseRecorder(response);
+    servlet.doGet(request, notModifiedRecorder);
+
+    assertEquals(HttpServletResponse.SC_NOT_MODIFIED, notModifiedRecorder.getHttpStatusCode());
+    assertEquals("", notModifiedRecorder.getResponseAsString());
+  }
+
+  public void testPartsWrittenAsReadyWhileCaching() throws Exception {
+    final StringBuilder writtenBeforeTwo = new StringBuilder();
+    servlet.setProxyHandler(new ProxyHandler(new HttpFetcher() {
+      public HttpResponse fetch(HttpRequest request) {
+        String url = request.getUri().toString();
+        if (URL_ONE.equals(url)) {
+          return new HttpResponse("one");
+        }
+        if (URL_TWO.equals(url)) {
+          writtenBeforeTwo.append(recorder.getResponseAsString());
+          return new HttpResponse("two");
+        }
+        return new HttpResponse("three");
+      }
+    }, lockedDomainService, null));
+    replay();
+    servlet.setCacheProvider(new LruCacheProvider(10));
+    servlet.setMaxParallelFetches(1);
+
+    servlet.doGet(request, recorder);
+
+    assertEquals(part(URL_ONE, "one"), writtenBeforeTwo.toString());
+    assertEquals(part(URL_ONE, "one") + part(URL_TWO, "two") + part(URL_THREE, "three"),
+        recorder.getResponseAsString());
+  }
+
+  public void testEmptyOutputNotCached() throws Exception {
+    HttpServletRequest emptyRequest = mock(HttpServletRequest.class);
+    replay();
+    servlet.setCacheProvider(new LruCacheProvider(10));
+
+    servlet.doGet(emptyRequest, recorder);
+    HttpServletResponseRecorder secondRecorder = new HttpServletResponseRecorder(response);
+    servlet.doGet(emptyRequest, secondRecorder);
+
+    assertEquals(HttpResponse.SC_OK, secondRecorder.getHttpStatusCode());
+    assertEquals("", secondRecorder.getResponseAsString());
+    assertNull("Empty output was served from the cache", secondRecorder.getHeader("ETag"));
+  }
+}
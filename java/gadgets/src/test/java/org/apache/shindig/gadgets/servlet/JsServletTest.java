@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+package org.apache.shindig.gadgets.servlet;
+
+import static org.easymock.EasyMock.expect;
+
+import com.google.common.collect.Lists;
+
+import org.apache.shindig.common.cache.LruCacheProvider;
+import org.apache.shindig.gadgets.GadgetFeature;
+import org.apache.shindig.gadgets.JsLibrary;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Tests for JsServlet.
+ */
+public class JsServletTest extends ServletTestFixture {
+  private static final String FEATURE_NAME = "foo";
+  private static final String CONTENT = "var foo = 'bar'";
+  private static final String JS = CONTENT + ";\n";
+
+  private final JsServlet servlet = new JsServlet();
+
+  @Override
+  public void setUp() throws Exception {
+    JsLibrary lib = JsLibrary.create(JsLibrary.Type.INLINE, CONTENT, FEATURE_NAME, null);
+    registry.register(new GadgetFeature(FEATURE_NAME, Arrays.asList(lib),
+        Lists.<String>newLinkedList()));
+    servlet.setRegistry(registry);
+    servlet.setCacheProvider(new LruCacheProvider(10));
+    expect(request.getRequestURI()).andReturn("/gadgets/js/" + FEATURE_NAME + ".js").anyTimes();
+  }
+
+  public void testPlain() throws Exception {
+    replay();
+
+    servlet.doGet(request, recorder);
+
+    assertEquals(JS, recorder.getResponseAsString());
+    assertNull(recorder.getHeader("Content-Encoding"));
+    assertNotNull(recorder.getHeader("ETag"));
+  }
+
+  public void testGzipped() throws Exception {
+    expect(request.getHeader("Accept-Encoding")).andReturn("gzip, deflate").anyTimes();
+    replay();
+
+    servlet.doGet(request, recorder);
+
+    assertEquals("gzip", recorder.getHeader("Content-Encoding"));
+    byte[] body = IOUtils.toByteArray(
+        new GZIPInputStream(new ByteArrayInputStream(recorder.getResponseAsBytes())));
+    assertEquals(JS, new String(body, "UTF-8"));
+  }
+
+  public void testMatchingETagNotModified() throws Exception {
+    replay();
+
+    servlet.doGet(request, recorder);
+    String etag = recorder.getHeader("ETag");
+
+    HttpServletResponseRecorder notModified = new HttpServletResponseRecorder(response);
+    reset();
+    expect(request.getRequestURI()).andReturn("/gadgets/js/" + FEATURE_NAME + ".js").anyTimes();
+    expect(request.getHeader("If-None-Match")).andReturn(etag).anyTimes();
+    replay();
+
+    servlet.doGet(request, notModified);
+
+    assertEquals(HttpServletResponse.SC_NOT_MODIFIED, notModified.getHttpStatusCode());
+    assertEquals("", notModified.getResponseAsString());
+  }
+
+  public void testAcceptsGzip() {
+    assertTrue(JsServlet.acceptsGzip("gzip"));
+    assertTrue(JsServlet.acceptsGzip("deflate, GZIP;q=0.5"));
+    assertFalse(JsServlet.acceptsGzip("gzip;q=0"));
+    assertFalse(JsServlet.acceptsGzip("deflate"));
+    assertFalse(JsServlet.acceptsGzip(null));
+  }
+}
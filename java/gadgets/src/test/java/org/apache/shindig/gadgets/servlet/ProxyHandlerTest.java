@@ -22,12 +22,19 @@ import static org.easymock.EasyMock.expect;
 
 import com.google.common.collect.Maps;
 
+import org.apache.shindig.common.cache.LruCacheProvider;
 import org.apache.shindig.common.uri.Uri;
 import org.apache.shindig.gadgets.GadgetException;
 import org.apache.shindig.gadgets.http.HttpRequest;
 import org.apache.shindig.gadgets.http.HttpResponse;
 import org.apache.shindig.gadgets.http.HttpResponseBuilder;
+import org.apache.shindig.gadgets.http.StreamingHttpFetcher;
+import org.apache.shindig.gadgets.rewrite.ContentRewriter;
+import org.apache.shindig.gadgets.rewrite.ContentRewriterFeatureFactory;
+import org.apache.shindig.gadgets.rewrite.DefaultContentRewriterRegistry;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
@@ -142,4 +149,116 @@ public class ProxyHandlerTest extends ServletTestFixture {
 
     verify();
   }
+
+  public void testNonRewritableContentStreamed() throws Exception {
+    String url = "http://example.org/image.png";
+    String domain = "example.org";
+    HttpResponse head = new HttpResponseBuilder().addHeader("Content-Type", "image/png").create();
+    FakeStreamingFetcher streamingFetcher = new FakeStreamingFetcher(head, DATA_ONE);
+
+    expect(lockedDomainService.isSafeForOpenProxy(domain)).andReturn(true).atLeastOnce();
+    setupProxyRequestMock(domain, url);
+    replay();
+
+    new ProxyHandler(streamingFetcher, lockedDomainService, rewriterRegistry)
+        .fetch(request, recorder);
+    verify();
+
+    assertTrue(streamingFetcher.streamed);
+    assertEquals(DATA_ONE, recorder.getResponseAsString());
+    assertEquals("image/png", recorder.getHeader("Content-Type"));
+    assertFalse(rewriter.responseWasRewritten());
+  }
+
+  public void testRewritableContentNotStreamed() throws Exception {
+    String url = "http://example.org/page.html";
+    String domain = "example.org";
+    HttpResponse head = new HttpResponseBuilder().addHeader("Content-Type", "text/html").create();
+    FakeStreamingFetcher streamingFetcher = new FakeStreamingFetcher(head, DATA_ONE);
+
+    expect(lockedDomainService.isSafeForOpenProxy(domain)).andReturn(true).atLeastOnce();
+    setupProxyRequestMock(domain, url);
+    replay();
+
+    new ProxyHandler(streamingFetcher, lockedDomainService, rewriterRegistry)
+        .fetch(request, recorder);
+    verify();
+
+    assertFalse(streamingFetcher.streamed);
+    assertEquals(DATA_ONE, recorder.getResponseAsString());
+    assertTrue(rewriter.responseWasRewritten());
+  }
+
+  public void testRewrittenResponseServedFromCache() throws Exception {
+    String domain = "example.org";
+    expect(lockedDomainService.isSafeForOpenProxy(domain)).andReturn(true).anyTimes();
+    expect(request.getHeader("Host")).andReturn(domain).anyTimes();
+    expect(request.getParameter("url")).andReturn(URL_ONE).anyTimes();
+    HttpResponse resp = new HttpResponseBuilder()
+        .addHeader("Cache-Control", "max-age=60")
+        .setResponseString(DATA_ONE)
+        .create();
+    expect(fetcher.fetch(new HttpRequest(Uri.parse(URL_ONE)))).andReturn(resp).once();
+    replay();
+
+    ProxyHandler cachingHandler = new ProxyHandler(fetcher, lockedDomainService, rewriterRegistry);
+    cachingHandler.setRewrittenResponseCache(new LruCacheProvider(10),
+        new ContentRewriterFeatureFactory(null, ".*", "", "HTTP", "embed,img,script,link,style"));
+    cachingHandler.fetch(request, recorder);
+    HttpServletResponseRecorder second = new HttpServletResponseRecorder(response);
+    cachingHandler.fetch(request, second);
+    verify();
+
+    assertEquals(DATA_ONE, recorder.getResponseAsString());
+    assertEquals(DATA_ONE, second.getResponseAsString());
+  }
+
+  public void testUnchangedResponseNotCachedAgain() throws Exception {
+    String domain = "example.org";
+    expect(lockedDomainService.isSafeForOpenProxy(domain)).andReturn(true).anyTimes();
+    expect(request.getHeader("Host")).andReturn(domain).anyTimes();
+    expect(request.getParameter("url")).andReturn(URL_ONE).anyTimes();
+    HttpResponse resp = new HttpResponseBuilder()
+        .addHeader("Cache-Control", "max-age=60")
+        .setResponseString(DATA_ONE)
+        .create();
+    expect(fetcher.fetch(new HttpRequest(Uri.parse(URL_ONE)))).andReturn(resp).times(2);
+    replay();
+
+    ProxyHandler cachingHandler = new ProxyHandler(fetcher, lockedDomainService,
+        new DefaultContentRewriterRegistry(Arrays.<ContentRewriter>asList(), null));
+    cachingHandler.setRewrittenResponseCache(new LruCacheProvider(10),
+        new ContentRewriterFeatureFactory(null, ".*", "", "HTTP", "embed,img,script,link,style"));
+    cachingHandler.fetch(request, recorder);
+    cachingHandler.fetch(request, new HttpServletResponseRecorder(response));
+    verify();
+  }
+
+  private static class FakeStreamingFetcher implements StreamingHttpFetcher {
+    private final HttpResponse head;
+    private final String body;
+    boolean streamed;
+
+    FakeStreamingFetcher(HttpResponse head, String body) {
+      this.head = head;
+      this.body = body;
+    }
+
+    public HttpResponse fetch(HttpRequest request) {
+      return fetch(request, null);
+    }
+
+    public HttpResponse fetch(HttpRequest request, BodySink sink) {
+      try {
+        OutputStream out = sink == null ? null : sink.open(head);
+        if (out != null) {
+          streamed = true;
+          out.write(body.getBytes("UTF-8"));
+        }
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+      return new HttpResponseBuilder(head).setResponseString(body).create();
+    }
+  }
 }
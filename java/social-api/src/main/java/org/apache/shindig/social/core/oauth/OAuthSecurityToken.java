@@ -58,6 +58,10 @@ public class OAuthSecurityToken implements SecurityToken {
     throw new UnsupportedOperationException();
   }
 
+  public String getContainer() {
+    return null;
+  }
+
   // Not needed for this basic token
   public String toSerialForm() {
     throw new UnsupportedOperationException();
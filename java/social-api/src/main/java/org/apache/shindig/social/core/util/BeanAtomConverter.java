@@ -28,6 +28,7 @@ import java.beans.IntrospectionException;
 import java.io.IOException;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -45,6 +46,15 @@ public class BeanAtomConverter implements BeanConverter {
     return convertToXml(pojo);
   }
 
+  public void append(Appendable buf, Object pojo) throws IOException {
+    buf.append(convertToString(pojo));
+  }
+
+  public void append(Appendable buf, Object pojo, Set<String> fields) throws IOException {
+    // The atom is always written with all of its fields
+    append(buf, pojo);
+  }
+
   public String convertToXml(Object obj) {
     String xmlHead="<?xml version=\"1.0\" encoding=\"UTF-8\"?>";
     StringWriter outputWriter = new StringWriter();
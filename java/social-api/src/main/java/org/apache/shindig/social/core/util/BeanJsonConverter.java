@@ -19,6 +19,7 @@ package org.apache.shindig.social.core.util;
 
 import org.apache.shindig.social.core.model.EnumImpl;
 import org.apache.shindig.social.opensocial.model.Enum;
+import org.apache.shindig.social.opensocial.model.Exportablebean;
 import org.apache.shindig.social.opensocial.service.BeanConverter;
 
 import com.google.common.collect.ImmutableSet;
@@ -33,10 +34,12 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
@@ -59,7 +62,7 @@ public class BeanJsonConverter implements BeanConverter {
   private static final String SETTER_PREFIX = "set";
 
   // Only compute the filtered getters/setters once per-class
-  private static final ConcurrentHashMap<Class,List<MethodPair>> GETTER_METHODS = Maps.newConcurrentHashMap();
+  private static final ConcurrentHashMap<Class,BeanWriter> BEAN_WRITERS = Maps.newConcurrentHashMap();
   private static final ConcurrentHashMap<Class,List<MethodPair>> SETTER_METHODS = Maps.newConcurrentHashMap();
 
   private Injector injector;
@@ -80,7 +83,126 @@ public class BeanJsonConverter implements BeanConverter {
    * @return An object whos toString method will return json
    */
   public String convertToString(final Object pojo) {
-    return convertToJson(pojo).toString();
+    StringBuilder buf = new StringBuilder();
+    try {
+      append(buf, pojo);
+    } catch (IOException e) {
+      // StringBuilder doesn't throw
+    }
+    return buf.toString();
+  }
+
+  /**
+   * Writes the passed in object to the buffer as json, in the same form as
+   * {@link #convertToJson(Object)} but without building a tree of json objects first.
+   *
+   * @param buf The buffer to write to, such as the servlet response writer
+   * @param pojo The object to convert
+   */
+  public void append(Appendable buf, Object pojo) throws IOException {
+    append(buf, pojo, null);
+  }
+
+  /**
+   * Writes the passed in object to the buffer as json, leaving out the fields of model objects
+   * that were not asked for. The fields apply to the outermost model objects, such as each
+   * person of a collection, and not to the objects nested in them.
+   *
+   * @param buf The buffer to write to, such as the servlet response writer
+   * @param pojo The object to convert
+   * @param fields The requested fields, or null or empty for all of them
+   */
+  public void append(Appendable buf, Object pojo, Set<String> fields) throws IOException {
+    try {
+      appendJson(buf, pojo, fields == null || fields.isEmpty() ? null : fields);
+    } catch (JSONException e) {
+      throw new RuntimeException("Could not translate " + pojo + " to json", e);
+    }
+  }
+
+  private void appendJson(Appendable buf, Object val, Set<String> fields)
+      throws IOException, JSONException {
+    if (val instanceof Object[]) {
+      appendArray(buf, Arrays.asList((Object[]) val), fields);
+    } else if (val instanceof List) {
+      appendArray(buf, (List<?>) val, fields);
+    } else if (val instanceof Map) {
+      buf.append('{');
+      boolean first = true;
+      for (Entry<?, ?> item : ((Map<?, ?>) val).entrySet()) {
+        // A JSONObject drops null values
+        if (item.getValue() != null) {
+          if (!first) {
+            buf.append(',');
+          }
+          buf.append(JSONObject.quote(item.getKey().toString())).append(':');
+          appendJson(buf, item.getValue(), fields);
+          first = false;
+        }
+      }
+      buf.append('}');
+    } else if (val != null && val.getClass().isEnum()) {
+      buf.append(JSONObject.quote(val.toString()));
+    } else if (val instanceof Float) {
+      buf.append(JSONObject.numberToString((Float) val));
+    } else if (val instanceof Boolean
+        || val instanceof Integer
+        || val instanceof Long
+        || val instanceof JSONObject
+        || val instanceof JSONArray
+        || val == null) {
+      buf.append(String.valueOf(val));
+    } else if (val instanceof String || val instanceof Date) {
+      buf.append(JSONObject.quote(val.toString()));
+    } else {
+      appendBean(buf, val, fields);
+    }
+  }
+
+  private void appendArray(Appendable buf, List<?> list, Set<String> fields)
+      throws IOException, JSONException {
+    buf.append('[');
+    for (int i = 0; i < list.size(); i++) {
+      if (i > 0) {
+        buf.append(',');
+      }
+      appendJson(buf, list.get(i), fields);
+    }
+    buf.append(']');
+  }
+
+  /**
+   * Writes the object reading Pojo properties, as {@link #convertMethodsToJson} does, using the
+   * {@link BeanWriter} prepared for its class.
+   */
+  private void appendBean(Appendable buf, Object pojo, Set<String> fields)
+      throws IOException, JSONException {
+    BeanWriter writer = getBeanWriter(pojo);
+    // Nested objects are written in full
+    Set<String> propertyFields = writer.modelObject ? null : fields;
+
+    buf.append('{');
+    boolean first = true;
+    for (PropertyWriter property : writer.properties) {
+      if (fields != null && writer.modelObject && property.filterable
+          && !fields.contains(property.getter.fieldName)) {
+        continue;
+      }
+      Object val = invokeGetter(pojo, property.getter);
+      if (val != null) {
+        if (!first) {
+          buf.append(',');
+        }
+        buf.append(property.prefix);
+        if (property.stringValued) {
+          buf.append(JSONObject.quote((String) val));
+        } else {
+          appendJson(buf, val, propertyFields);
+        }
+        first = false;
+      }
+    }
+    buf.append('}');
   }
 
   /**
@@ -145,34 +267,42 @@ public class BeanJsonConverter implements BeanConverter {
    * @return A JSONObject representing this pojo
    */
   private JSONObject convertMethodsToJson(final Object pojo) {
-    List<MethodPair> availableGetters;
-
-    availableGetters = GETTER_METHODS.get(pojo.getClass());
-    if (availableGetters == null) {
-      availableGetters = getMatchingMethods(pojo, GETTER_PREFIX);
-      GETTER_METHODS.putIfAbsent(pojo.getClass(), availableGetters);
-    }
-
     JSONObject toReturn = new JSONObject();
-    for (MethodPair getter : availableGetters) {
-      try {
-        Object val = getter.method.invoke(pojo, EMPTY_OBJECT);
-        if (val != null) {
+    for (PropertyWriter property : getBeanWriter(pojo).properties) {
+      MethodPair getter = property.getter;
+      Object val = invokeGetter(pojo, getter);
+      if (val != null) {
+        try {
           toReturn.put(getter.fieldName, translateObjectToJson(val));
+        } catch (JSONException e) {
+          throw new RuntimeException(errorMessage(pojo, getter), e);
         }
-      } catch (JSONException e) {
-        throw new RuntimeException(errorMessage(pojo, getter), e);
-      } catch (IllegalAccessException e) {
-        throw new RuntimeException(errorMessage(pojo, getter), e);
-      } catch (InvocationTargetException e) {
-        throw new RuntimeException(errorMessage(pojo, getter), e);
-      } catch (IllegalArgumentException e) {
-        throw new RuntimeException(errorMessage(pojo, getter), e);
       }
     }
     return toReturn;
   }
 
+  private BeanWriter getBeanWriter(Object pojo) {
+    BeanWriter writer = BEAN_WRITERS.get(pojo.getClass());
+    if (writer == null) {
+      writer = new BeanWriter(pojo.getClass(), getMatchingMethods(pojo, GETTER_PREFIX));
+      BEAN_WRITERS.putIfAbsent(pojo.getClass(), writer);
+    }
+    return writer;
+  }
+
+  private static Object invokeGetter(Object pojo, MethodPair getter) {
+    try {
+      return getter.method.invoke(pojo, EMPTY_OBJECT);
+    } catch (IllegalAccessException e) {
+      throw new RuntimeException(errorMessage(pojo, getter), e);
+    } catch (InvocationTargetException e) {
+      throw new RuntimeException(errorMessage(pojo, getter), e);
+    } catch (IllegalArgumentException e) {
+      throw new RuntimeException(errorMessage(pojo, getter), e);
+    }
+  }
+
   private static String errorMessage(Object pojo, MethodPair getter) {
     return "Could not encode the " + getter.method + " method on "
         + pojo.getClass().getName();
@@ -189,6 +319,79 @@ public class BeanJsonConverter implements BeanConverter {
   }
 
 
+  /**
+   * How to write the properties of one class, worked out once from its getters so that writing
+   * an instance doesn't look at the class again: the json name of each property is quoted up
+   * front, string properties skip the type checks, and getters are made accessible so invoking
+   * them skips the access checks.
+   */
+  private static final class BeanWriter {
+    private final List<PropertyWriter> properties;
+    /** Whether the class implements an opensocial model interface, to which fields apply. */
+    private final boolean modelObject;
+
+    private BeanWriter(Class<?> clazz, List<MethodPair> getters) {
+      Set<Class<?>> models = Sets.newHashSet();
+      addModelInterfaces(clazz, models, Sets.<Class<?>>newHashSet());
+      this.modelObject = !models.isEmpty();
+
+      // The json names of the model's fields, from the Field enum each model interface declares
+      Set<String> modelFields = Sets.newHashSet();
+      for (Class<?> model : models) {
+        for (Class<?> nested : model.getDeclaredClasses()) {
+          if (nested.isEnum() && "Field".equals(nested.getSimpleName())) {
+            for (Object field : nested.getEnumConstants()) {
+              modelFields.add(field.toString());
+            }
+          }
+        }
+      }
+      // The id identifies the object, so it is written even when it was not asked for
+      modelFields.remove("id");
+
+      List<PropertyWriter> writers = Lists.newArrayListWithExpectedSize(getters.size());
+      for (MethodPair getter : getters) {
+        try {
+          getter.method.setAccessible(true);
+        } catch (SecurityException e) {
+          // Invoke it with the access checks
+        }
+        writers.add(new PropertyWriter(getter, modelFields.contains(getter.fieldName)));
+      }
+      this.properties = writers;
+    }
+
+    private static void addModelInterfaces(Class<?> clazz, Set<Class<?>> models,
+        Set<Class<?>> seen) {
+      if (clazz == null || !seen.add(clazz)) {
+        return;
+      }
+      if (clazz.isInterface() && clazz.isAnnotationPresent(Exportablebean.class)) {
+        models.add(clazz);
+      }
+      addModelInterfaces(clazz.getSuperclass(), models, seen);
+      for (Class<?> iface : clazz.getInterfaces()) {
+        addModelInterfaces(iface, models, seen);
+      }
+    }
+  }
+
+  private static final class PropertyWriter {
+    private final MethodPair getter;
+    /** The quoted json name and the colon that come before the value. */
+    private final String prefix;
+    private final boolean stringValued;
+    /** Whether the property is one of the model's fields, and so left out if not requested. */
+    private final boolean filterable;
+
+    private PropertyWriter(MethodPair getter, boolean filterable) {
+      this.getter = getter;
+      this.prefix = JSONObject.quote(getter.fieldName) + ':';
+      this.stringValued = getter.method.getReturnType() == String.class;
+      this.filterable = filterable;
+    }
+  }
+
   private List<MethodPair> getMatchingMethods(Object pojo, String prefix) {
 
     List<MethodPair> availableGetters = Lists.newArrayList();
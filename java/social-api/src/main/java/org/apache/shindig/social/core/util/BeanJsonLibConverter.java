@@ -32,8 +32,10 @@ import com.google.inject.name.Named;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import java.io.IOException;
 import java.lang.reflect.Array;
 import java.util.List;
+import java.util.Set;
 
 /**
  * BeanConverter implementation us the net.sf.json-lib json library.
@@ -149,6 +151,15 @@ public class BeanJsonLibConverter implements BeanConverter {
     }
   }
 
+  public void append(Appendable buf, Object pojo) throws IOException {
+    buf.append(convertToString(pojo));
+  }
+
+  public void append(Appendable buf, Object pojo, Set<String> fields) throws IOException {
+    // Fields are not applied by this converter
+    append(buf, pojo);
+  }
+
   /**
    * Add a mapping to the json -> pojo conversion map.
    * @param key the name of the json key to bind to
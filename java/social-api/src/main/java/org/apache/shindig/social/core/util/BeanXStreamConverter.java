@@ -41,8 +41,10 @@ import org.apache.shindig.social.opensocial.spi.RestfulCollection;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 public class BeanXStreamConverter implements BeanConverter {
   public static final String XML_DECL = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>";
@@ -92,6 +94,15 @@ public class BeanXStreamConverter implements BeanConverter {
     return convertToXml(pojo);
   }
 
+  public void append(Appendable buf, Object pojo) throws IOException {
+    buf.append(convertToString(pojo));
+  }
+
+  public void append(Appendable buf, Object pojo, Set<String> fields) throws IOException {
+    // The xml is always written with all of its fields
+    append(buf, pojo);
+  }
+
   /**
    * convert an Object to XML, but make certain that only one of these is run on
    * a thread at any one time. This only matters if this class is extended.
@@ -19,12 +19,16 @@ package org.apache.shindig.social.opensocial.service;
 
 import org.apache.shindig.social.opensocial.model.Activity;
 import org.apache.shindig.social.opensocial.spi.ActivityService;
+import org.apache.shindig.social.opensocial.spi.BatchActivityService;
+import org.apache.shindig.social.opensocial.spi.RestfulCollection;
 import org.apache.shindig.social.opensocial.spi.SocialSpiException;
 import org.apache.shindig.social.opensocial.spi.UserId;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import com.google.inject.Inject;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.Future;
@@ -132,4 +136,52 @@ public class ActivityHandler extends DataRequestHandler {
         request.getFields(), request.getToken());
   }
 
+  /**
+   * Answers the requests that each fetch the activities of a single user with one call to the
+   * activity service, when it supports batches. Lookups are grouped by group, app and fields,
+   * since a batch fetches the same ones for every user in it.
+   */
+  @Override
+  public List<Future<?>> handleItems(List<RequestItem> requests) {
+    if (!(service instanceof BatchActivityService)) {
+      return super.handleItems(requests);
+    }
+    return handleItems(requests, new BatchLookup<RestfulCollection<Activity>>() {
+      public Object getBatchKey(RequestItem request) {
+        return getSingleUserId(request) == null ? null
+            : Arrays.<Object>asList(request.getGroup(), request.getAppId(), request.getFields());
+      }
+
+      public Future<List<RestfulCollection<Activity>>> fetchBatch(List<RequestItem> batch)
+          throws SocialSpiException {
+        List<UserId> userIds = Lists.newArrayListWithExpectedSize(batch.size());
+        for (RequestItem request : batch) {
+          userIds.add(getSingleUserId(request));
+        }
+        RequestItem first = batch.get(0);
+        return ((BatchActivityService) service).getActivitiesBatch(userIds, first.getGroup(),
+            first.getAppId(), first.getFields(), first.getToken());
+      }
+
+      public String getNotFoundMessage() {
+        return "Activities not found";
+      }
+    });
+  }
+
+  /**
+   * @return The one user whose activities the request fetches, or null if it is not a get of
+   *     the activities of a single user.
+   */
+  private static UserId getSingleUserId(RequestItem request) {
+    if (!isGet(request)) {
+      return null;
+    }
+    request.applyUrlTemplate(ACTIVITY_ID_PATH);
+    Set<UserId> userIds = request.getUsers();
+    if (userIds.size() != 1 || !request.getListParameter("activityId").isEmpty()) {
+      return null;
+    }
+    return userIds.iterator().next();
+  }
 }
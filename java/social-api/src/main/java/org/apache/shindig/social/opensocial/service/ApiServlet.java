@@ -19,19 +19,27 @@ package org.apache.shindig.social.opensocial.service;
 
 import org.apache.shindig.auth.AuthInfo;
 import org.apache.shindig.auth.SecurityToken;
+import org.apache.shindig.common.ContainerConfig;
 import org.apache.shindig.common.servlet.InjectedServlet;
 import org.apache.shindig.common.util.ImmediateFuture;
 import org.apache.shindig.social.ResponseError;
-import org.apache.shindig.social.core.util.BeanJsonConverter;
 import org.apache.shindig.social.opensocial.spi.SocialSpiException;
 
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.inject.Inject;
 import com.google.inject.name.Named;
 
 import java.io.IOException;
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
@@ -39,10 +47,17 @@ import javax.servlet.http.HttpServletResponse;
  * Common base class for API servlets.
  */
 public abstract class ApiServlet extends InjectedServlet {
+  private static final Logger logger = Logger.getLogger(ApiServlet.class.getName());
+
   protected static final String DEFAULT_ENCODING = "UTF-8";
 
+  /** Container config key for the time allowed to resolve all items of a request. */
+  static final String BATCH_TIMEOUT_KEY = "social.batchTimeoutMs";
+  static final long DEFAULT_BATCH_TIMEOUT = 10000L;
+
   private HandlerDispatcher dispatcher;
-  protected BeanJsonConverter jsonConverter;
+  private ContainerConfig containerConfig;
+  protected BeanConverter jsonConverter;
   protected BeanConverter xmlConverter;
   protected BeanConverter atomConverter;
 
@@ -56,12 +71,16 @@ public abstract class ApiServlet extends InjectedServlet {
       @Named("shindig.bean.converter.json") BeanConverter jsonConverter,
       @Named("shindig.bean.converter.xml") BeanConverter xmlConverter,
       @Named("shindig.bean.converter.atom") BeanConverter atomConverter) {
-    // fix this
-    this.jsonConverter = (BeanJsonConverter) jsonConverter;
+    this.jsonConverter = jsonConverter;
     this.xmlConverter = xmlConverter;
     this.atomConverter = atomConverter;
   }
 
+  @Inject(optional = true)
+  public void setContainerConfig(ContainerConfig containerConfig) {
+    this.containerConfig = containerConfig;
+  }
+
   protected SecurityToken getSecurityToken(HttpServletRequest servletRequest) {
     return new AuthInfo(servletRequest).getSecurityToken();
   }
@@ -75,6 +94,23 @@ public abstract class ApiServlet extends InjectedServlet {
             + "requests are not allowed"));
   }
 
+  /**
+   * Reports a response that the converter failed on part way through. Output is streamed, so the
+   * error can only replace it while none of it has reached the client; after that the response
+   * is left truncated and the failure is only logged.
+   */
+  protected void sendConversionError(HttpServletResponse servletResponse, RuntimeException e)
+      throws IOException {
+    if (servletResponse.isCommitted()) {
+      logger.log(Level.SEVERE, "Could not convert response, sent it truncated", e);
+      return;
+    }
+    logger.log(Level.WARNING, "Could not convert response", e);
+    servletResponse.resetBuffer();
+    sendError(servletResponse, new ResponseItem(ResponseError.INTERNAL_ERROR,
+        "Could not convert response - " + e.getMessage()));
+  }
+
   /**
    * Delivers a request item to the appropriate DataRequestHandler.
    */
@@ -90,11 +126,92 @@ public abstract class ApiServlet extends InjectedServlet {
     return handler.handleItem(requestItem);
   }
 
+  /**
+   * Delivers the request items of a batch to their DataRequestHandlers. Items for the same
+   * service are handed to the handler together, so it can serve them with fewer calls to the
+   * service behind it.
+   *
+   * @return a future for each request item, in the same order.
+   */
+  protected List<Future<?>> handleRequestItems(List<? extends RequestItem> requestItems,
+      HttpServletRequest servletRequest) {
+    Map<String, List<Integer>> indexesByService = Maps.newLinkedHashMap();
+    for (int i = 0; i < requestItems.size(); i++) {
+      String service = requestItems.get(i).getService();
+      List<Integer> indexes = indexesByService.get(service);
+      if (indexes == null) {
+        indexes = Lists.newArrayList();
+        indexesByService.put(service, indexes);
+      }
+      indexes.add(i);
+    }
+
+    List<Future<?>> responses =
+        Lists.newArrayList(Collections.<Future<?>>nCopies(requestItems.size(), null));
+    for (Map.Entry<String, List<Integer>> entry : indexesByService.entrySet()) {
+      List<Integer> indexes = entry.getValue();
+      DataRequestHandler handler = dispatcher.getHandler(entry.getKey());
+      if (indexes.size() == 1 || handler == null) {
+        for (int index : indexes) {
+          responses.set(index, handleRequestItem(requestItems.get(index), servletRequest));
+        }
+        continue;
+      }
+
+      List<RequestItem> serviceItems = Lists.newArrayListWithExpectedSize(indexes.size());
+      for (int index : indexes) {
+        serviceItems.add(requestItems.get(index));
+      }
+      List<Future<?>> serviceResponses = handler.handleItems(serviceItems);
+      for (int i = 0; i < indexes.size(); i++) {
+        responses.set(indexes.get(i), serviceResponses.get(i));
+      }
+    }
+    return responses;
+  }
+
+  /**
+   * @return The time by which every item of the request must be resolved, using the batch timeout
+   *     configured for the container the security token was issued for.
+   */
+  protected long getDeadline(SecurityToken token) {
+    long timeout = DEFAULT_BATCH_TIMEOUT;
+    if (containerConfig != null) {
+      String value = null;
+      if (token.getContainer() != null) {
+        value = containerConfig.get(token.getContainer(), BATCH_TIMEOUT_KEY);
+      }
+      if (value == null) {
+        value = containerConfig.get(ContainerConfig.DEFAULT_CONTAINER, BATCH_TIMEOUT_KEY);
+      }
+      if (value != null) {
+        try {
+          timeout = Long.parseLong(value);
+        } catch (NumberFormatException e) {
+          // Keep the default.
+        }
+      }
+    }
+    return System.currentTimeMillis() + timeout;
+  }
+
   protected ResponseItem getResponseItem(Future<?> future) {
+    return getResponseItem(future, Long.MAX_VALUE);
+  }
+
+  /**
+   * Resolves a future into a response, waiting no later than the deadline. The futures of a
+   * request all run while this waits, so resolving them one after another against the same
+   * deadline bounds the whole request rather than each item.
+   */
+  protected ResponseItem getResponseItem(Future<?> future, long deadline) {
     ResponseItem response;
     try {
-      // TODO: use timeout methods?
-      Object result = future != null ? future.get() : null;
+      Object result = null;
+      if (future != null) {
+        long remaining = Math.max(0, deadline - System.currentTimeMillis());
+        result = future.get(remaining, TimeUnit.MILLISECONDS);
+      }
       // TODO: null is now a supported return value for post/delete, but
       // is bad for get().
       response = new ResponseItem(result != null ? result : Collections.emptyMap());
@@ -102,6 +219,9 @@ public abstract class ApiServlet extends InjectedServlet {
       response = responseItemFromException(ie);
     } catch (ExecutionException ee) {
       response = responseItemFromException(ee.getCause());
+    } catch (TimeoutException te) {
+      future.cancel(true);
+      response = new ResponseItem(ResponseError.INTERNAL_ERROR, "Request timed out");
     }
 
     return response;
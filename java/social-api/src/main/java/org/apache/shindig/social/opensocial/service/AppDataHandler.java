@@ -19,12 +19,17 @@ package org.apache.shindig.social.opensocial.service;
 
 import org.apache.shindig.social.ResponseError;
 import org.apache.shindig.social.opensocial.spi.AppDataService;
+import org.apache.shindig.social.opensocial.spi.BatchAppDataService;
+import org.apache.shindig.social.opensocial.spi.DataCollection;
 import org.apache.shindig.social.opensocial.spi.SocialSpiException;
 import org.apache.shindig.social.opensocial.spi.UserId;
 
+import com.google.common.collect.Lists;
 import com.google.inject.Inject;
 
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Future;
@@ -124,6 +129,52 @@ public class AppDataHandler extends DataRequestHandler {
         request.getAppId(), request.getFields(), request.getToken());
   }
 
+  /**
+   * Answers the requests that each fetch the data of a single user with one call to the app data
+   * service, when it supports batches. Lookups are grouped by group, app and fields, since a
+   * batch fetches the same ones for every user in it.
+   */
+  @Override
+  public List<Future<?>> handleItems(List<RequestItem> requests) {
+    if (!(service instanceof BatchAppDataService)) {
+      return super.handleItems(requests);
+    }
+    return handleItems(requests, new BatchLookup<DataCollection>() {
+      public Object getBatchKey(RequestItem request) {
+        return getSingleUserId(request) == null ? null
+            : Arrays.<Object>asList(request.getGroup(), request.getAppId(), request.getFields());
+      }
+
+      public Future<List<DataCollection>> fetchBatch(List<RequestItem> batch)
+          throws SocialSpiException {
+        List<UserId> userIds = Lists.newArrayListWithExpectedSize(batch.size());
+        for (RequestItem request : batch) {
+          userIds.add(getSingleUserId(request));
+        }
+        RequestItem first = batch.get(0);
+        return ((BatchAppDataService) service).getPersonDataBatch(userIds, first.getGroup(),
+            first.getAppId(), first.getFields(), first.getToken());
+      }
+
+      public String getNotFoundMessage() {
+        return "App data not found";
+      }
+    });
+  }
+
+  /**
+   * @return The one user whose data the request fetches, or null if it is not a get of the data
+   *     of a single user.
+   */
+  private static UserId getSingleUserId(RequestItem request) {
+    if (!isGet(request)) {
+      return null;
+    }
+    request.applyUrlTemplate(APP_DATA_PATH);
+    Set<UserId> userIds = request.getUsers();
+    return userIds.size() == 1 ? userIds.iterator().next() : null;
+  }
+
   /**
    * Determines whether the input is a valid key. Valid keys match the regular expression [\w\-\.]+.
    * The logic is not done using java.util.regex.* as that is 20X slower.
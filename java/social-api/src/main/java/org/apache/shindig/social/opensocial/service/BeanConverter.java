@@ -17,10 +17,27 @@
  */
 package org.apache.shindig.social.opensocial.service;
 
+import java.io.IOException;
+import java.util.Set;
+
 public interface BeanConverter {
   <T> T convertToObject(String string, Class<T> className);
 
   String convertToString(Object pojo);
 
+  /**
+   * Writes the converted form of the object to the buffer, without building it up as a string
+   * first when the format allows it.
+   */
+  void append(Appendable buf, Object pojo) throws IOException;
+
+  /**
+   * Writes the converted form of the object to the buffer, leaving out the fields of model
+   * objects that were not asked for when the format supports it.
+   *
+   * @param fields The requested fields, or null or empty for all of them
+   */
+  void append(Appendable buf, Object pojo, Set<String> fields) throws IOException;
+
   String getContentType();
 }
@@ -22,10 +22,18 @@ import org.apache.shindig.social.ResponseError;
 import org.apache.shindig.social.opensocial.spi.SocialSpiException;
 
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public abstract class DataRequestHandler {
 
@@ -63,6 +71,160 @@ public abstract class DataRequestHandler {
     return responseItem;
   }
 
+  /**
+   * Handles several requests to this service from the same batch. Handlers whose service can
+   * answer several requests with one call override this; by default each request is handled on
+   * its own.
+   *
+   * @return a future for each request, in the same order.
+   */
+  public List<Future<?>> handleItems(List<RequestItem> requests) {
+    List<Future<?>> responses = Lists.newArrayListWithExpectedSize(requests.size());
+    for (RequestItem request : requests) {
+      responses.add(handleItem(request));
+    }
+    return responses;
+  }
+
+  /**
+   * @return True if the request is a get.
+   */
+  protected static boolean isGet(RequestItem request) {
+    return request.getOperation() != null
+        && GET_SYNONYMS.contains(request.getOperation().toLowerCase());
+  }
+
+  /**
+   * Handles several requests, answering those that can be batched together with a single call to
+   * {@link BatchLookup#fetchBatch}. Every other request is handled on its own.
+   *
+   * @return a future for each request, in the same order.
+   */
+  protected <T> List<Future<?>> handleItems(List<RequestItem> requests,
+      BatchLookup<T> lookup) {
+    List<Future<?>> responses =
+        Lists.newArrayList(Collections.<Future<?>>nCopies(requests.size(), null));
+    Map<Object, List<Integer>> batches = Maps.newLinkedHashMap();
+    for (int i = 0; i < requests.size(); i++) {
+      Object key = getBatchKey(lookup, requests.get(i));
+      if (key == null) {
+        responses.set(i, handleItem(requests.get(i)));
+        continue;
+      }
+      List<Integer> batch = batches.get(key);
+      if (batch == null) {
+        batch = Lists.newArrayList();
+        batches.put(key, batch);
+      }
+      batch.add(i);
+    }
+
+    for (List<Integer> batch : batches.values()) {
+      if (batch.size() == 1) {
+        responses.set(batch.get(0), handleItem(requests.get(batch.get(0))));
+        continue;
+      }
+      List<RequestItem> batchRequests = Lists.newArrayListWithExpectedSize(batch.size());
+      for (int index : batch) {
+        batchRequests.add(requests.get(index));
+      }
+      try {
+        Future<List<T>> results = lookup.fetchBatch(batchRequests);
+        String notFoundMessage = lookup.getNotFoundMessage();
+        for (int i = 0; i < batch.size(); i++) {
+          responses.set(batch.get(i), new BatchedResult<T>(results, i, notFoundMessage));
+        }
+      } catch (SocialSpiException spe) {
+        for (int index : batch) {
+          responses.set(index, ImmediateFuture.errorInstance(spe));
+        }
+      }
+    }
+    return responses;
+  }
+
+  private static Object getBatchKey(BatchLookup<?> lookup, RequestItem request) {
+    try {
+      return lookup.getBatchKey(request);
+    } catch (SocialSpiException e) {
+      // Invalid request; handleItem reports the error.
+      return null;
+    } catch (RuntimeException e) {
+      // Invalid request; handleItem reports the error.
+      return null;
+    }
+  }
+
+  /**
+   * A kind of request that the service can answer for several requests with one call.
+   *
+   * @param <T> The result of a single request.
+   */
+  protected interface BatchLookup<T> {
+    /**
+     * @return The key of the batch the request may join, or null if it must be handled on its
+     *     own. Requests with equal keys are fetched with one call.
+     */
+    Object getBatchKey(RequestItem request) throws SocialSpiException;
+
+    /**
+     * @return The result of each request, in the same order, with null for requests that matched
+     *     nothing.
+     */
+    Future<List<T>> fetchBatch(List<RequestItem> requests) throws SocialSpiException;
+
+    /**
+     * @return The error message for requests that matched nothing.
+     */
+    String getNotFoundMessage();
+  }
+
+  /**
+   * The result at one position of a batch.
+   */
+  private static class BatchedResult<T> implements Future<T> {
+    private final Future<List<T>> results;
+    private final int index;
+    private final String notFoundMessage;
+
+    BatchedResult(Future<List<T>> results, int index, String notFoundMessage) {
+      this.results = results;
+      this.index = index;
+      this.notFoundMessage = notFoundMessage;
+    }
+
+    public T get() throws InterruptedException, ExecutionException {
+      return getResult(results.get());
+    }
+
+    public T get(long timeout, TimeUnit unit)
+        throws InterruptedException, ExecutionException, TimeoutException {
+      return getResult(results.get(timeout, unit));
+    }
+
+    private T getResult(List<T> batch) throws ExecutionException {
+      T result = batch.get(index);
+      if (result == null) {
+        throw new ExecutionException(
+            new SocialSpiException(ResponseError.BAD_REQUEST, notFoundMessage));
+      }
+      return result;
+    }
+
+    public boolean cancel(boolean mayInterruptIfRunning) {
+      // The batch is shared with other requests.
+      return false;
+    }
+
+    public boolean isCancelled() {
+      return results.isCancelled();
+    }
+
+    public boolean isDone() {
+      return results.isDone();
+    }
+  }
+
   protected abstract Future<?> handleDelete(RequestItem request)
       throws SocialSpiException;
 
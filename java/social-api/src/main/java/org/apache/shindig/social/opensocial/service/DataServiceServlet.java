@@ -25,7 +25,6 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
 
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.util.logging.Logger;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
@@ -104,14 +103,18 @@ public class DataServiceServlet extends ApiServlet {
 
     servletResponse.setContentType(converter.getContentType());
     if (responseItem.getError() == null) {
-      PrintWriter writer = servletResponse.getWriter();
       Object response = responseItem.getResponse();
       // TODO: ugliness resulting from not using RestfulItem
       if (!(response instanceof DataCollection) && !(response instanceof RestfulCollection)) {
         response = ImmutableMap.of("entry", response);
       }
 
-      writer.write(converter.convertToString(response));
+      try {
+        // Only the fields the request asked for are written, where the format allows it
+        converter.append(servletResponse.getWriter(), response, requestItem.getFields());
+      } catch (RuntimeException e) {
+        sendConversionError(servletResponse, e);
+      }
     } else {
       sendError(servletResponse, responseItem);
     }
@@ -24,6 +24,7 @@ import org.apache.shindig.social.opensocial.spi.DataCollection;
 import org.apache.shindig.social.opensocial.spi.RestfulCollection;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.json.JSONArray;
@@ -31,7 +32,9 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.IOException;
+import java.io.PrintWriter;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Future;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
@@ -92,31 +95,42 @@ public class JsonRpcServlet extends ApiServlet {
 
   protected void dispatchBatch(JSONArray batch, HttpServletRequest servletRequest,
       HttpServletResponse servletResponse, SecurityToken token) throws JSONException, IOException {
-    // Use linked hash map to preserve order
-    List<Future<?>> responses = Lists.newArrayListWithExpectedSize(batch.length());
-
-    // Gather all Futures.  We do this up front so that
-    // the first call to get() comes after all futures are created,
-    // which allows for implementations that batch multiple Futures
-    // into single requests.
+    List<RpcRequestItem> requestItems = Lists.newArrayListWithExpectedSize(batch.length());
     for (int i = 0; i < batch.length(); i++) {
       JSONObject batchObj = batch.getJSONObject(i);
-      RpcRequestItem requestItem = new RpcRequestItem(batchObj, token, jsonConverter);
-      responses.add(handleRequestItem(requestItem, servletRequest));
+      requestItems.add(new RpcRequestItem(batchObj, token, jsonConverter));
     }
 
-    // Resolve each Future into a response.
-    // TODO: should use shared deadline across each request
-    JSONArray result = new JSONArray();
-    for (int i = 0; i < batch.length(); i++) {
-      JSONObject batchObj = batch.getJSONObject(i);
-      String key = null;
-      if (batchObj.has("id")) {
-        key = batchObj.getString("id");
+    // Gather all Futures.  We do this up front so that
+    // the first call to get() comes after all futures are created,
+    // which allows for implementations that batch multiple Futures
+    // into single requests. Items for the same service are handed over together, so that
+    // handlers can answer them with a single call to their service.
+    List<Future<?>> responses = handleRequestItems(requestItems, servletRequest);
+
+    // Resolve each Future into a response, and write it out as soon as it is resolved. Items
+    // share one deadline, so a slow item only costs what is left of it and later items that
+    // miss it report a timeout.
+    long deadline = getDeadline(token);
+    PrintWriter writer = servletResponse.getWriter();
+    try {
+      writer.write('[');
+      for (int i = 0; i < batch.length(); i++) {
+        JSONObject batchObj = batch.getJSONObject(i);
+        String key = null;
+        if (batchObj.has("id")) {
+          key = batchObj.getString("id");
+        }
+        if (i > 0) {
+          writer.write(',');
+        }
+        appendResponse(writer, key, requestItems.get(i),
+            getResponseItem(responses.get(i), deadline));
       }
-      result.put(getJSONResponse(key, getResponseItem(responses.get(i))));
+      writer.write(']');
+    } catch (RuntimeException e) {
+      sendConversionError(servletResponse, e);
     }
-    servletResponse.getWriter().write(result.toString());
   }
 
   protected void dispatch(JSONObject request, HttpServletRequest servletRequest,
@@ -127,65 +141,72 @@ public class JsonRpcServlet extends ApiServlet {
     }
     RpcRequestItem requestItem = new RpcRequestItem(request, token, jsonConverter);
 
-    // Resolve each Future into a response.
-    // TODO: should use shared deadline across each request
-    ResponseItem response = getResponseItem(handleRequestItem(requestItem, servletRequest));
-    JSONObject result = getJSONResponse(key, response);
-    servletResponse.getWriter().write(result.toString());
+    // Resolve the Future into a response.
+    ResponseItem response = getResponseItem(handleRequestItem(requestItem, servletRequest),
+        getDeadline(token));
+    try {
+      appendResponse(servletResponse.getWriter(), key, requestItem, response);
+    } catch (RuntimeException e) {
+      sendConversionError(servletResponse, e);
+    }
   }
 
-  private JSONObject getJSONResponse(String key, ResponseItem responseItem) throws JSONException {
-    JSONObject result = new JSONObject();
+  /**
+   * Writes the response for one request. The envelope is written here and the data is streamed
+   * by the json converter, so no json tree or string is built for the response. Only the fields
+   * the request asked for are written.
+   */
+  private void appendResponse(Appendable out, String key, RequestItem requestItem,
+      ResponseItem responseItem) throws IOException {
+    out.append('{');
+    String separator = "";
     if (key != null) {
-      result.put("id", key);
+      out.append("\"id\":").append(JSONObject.quote(key));
+      separator = ",";
     }
     if (responseItem.getError() != null) {
-      result.put("error", getErrorJson(responseItem));
+      out.append(separator).append("\"error\":");
+      appendError(out, responseItem);
     } else {
       Object response = responseItem.getResponse();
-      JSONObject converted = (JSONObject) jsonConverter.convertToJson(response);
+      Object data = response;
 
       if (response instanceof RestfulCollection) {
         // FIXME this is a little hacky because of the field names in the RestfulCollection
-        converted.put("list", converted.remove("entry"));
-        result.put("data", converted);
+        RestfulCollection<?> collection = (RestfulCollection<?>) response;
+        Map<String, Object> list = Maps.newLinkedHashMap();
+        list.put("list", collection.getEntry());
+        list.put("startIndex", collection.getStartIndex());
+        list.put("totalResults", collection.getTotalResults());
+        data = list;
       } else if (response instanceof DataCollection) {
-        if (converted.has("entry")) {
-          result.put("data", converted.get("entry"));
-        }
-      } else {
-        result.put("data", converted);
+        data = ((DataCollection) response).getEntry();
+      }
+
+      if (data != null) {
+        out.append(separator).append("\"data\":");
+        jsonConverter.append(out, data, requestItem.getFields());
       }
     }
-    return result;
+    out.append('}');
   }
 
   // TODO(doll): Refactor the responseItem so that the fields on it line up with this format.
   // Then we can use the general converter to output the response to the client and we won't
   // be harcoded to json.
-  private JSONObject getErrorJson(ResponseItem responseItem) throws JSONException {
-    JSONObject error = new JSONObject();
-    error.put("code", responseItem.getError().getHttpErrorCode());
-
+  private void appendError(Appendable out, ResponseItem responseItem) throws IOException {
     String message = responseItem.getError().toString();
     if (StringUtils.isNotBlank(responseItem.getErrorMessage())) {
       message += ": " + responseItem.getErrorMessage();
     }
-    error.put("message", message);
-    return error;
+    out.append("{\"code\":").append(String.valueOf(responseItem.getError().getHttpErrorCode()))
+        .append(",\"message\":").append(JSONObject.quote(message)).append('}');
   }
 
   @Override
   protected void sendError(HttpServletResponse servletResponse, ResponseItem responseItem)
       throws IOException {
-    try {
-      JSONObject error = getErrorJson(responseItem);
-      servletResponse.getWriter().write(error.toString());
-    } catch (JSONException je) {
-      // This really shouldn't ever happen
-      servletResponse.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
-          "Error generating error response " + je.getMessage());
-    }
+    appendError(servletResponse.getWriter(), responseItem);
   }
 
   private void sendBadRequest(Throwable t, HttpServletResponse response) throws IOException {
@@ -19,15 +19,18 @@ package org.apache.shindig.social.opensocial.service;
 
 import org.apache.shindig.social.ResponseError;
 import org.apache.shindig.social.opensocial.model.Person;
+import org.apache.shindig.social.opensocial.spi.BatchPersonService;
 import org.apache.shindig.social.opensocial.spi.CollectionOptions;
 import org.apache.shindig.social.opensocial.spi.GroupId;
 import org.apache.shindig.social.opensocial.spi.PersonService;
 import org.apache.shindig.social.opensocial.spi.SocialSpiException;
 import org.apache.shindig.social.opensocial.spi.UserId;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import com.google.inject.Inject;
 
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.Future;
 
@@ -106,4 +109,60 @@ public class PersonHandler extends DataRequestHandler {
     // Every other case is a collection response.
     return personService.getPeople(userIds, groupId, options, fields, request.getToken());
   }
+
+  /**
+   * Answers the requests that each fetch a single person with one call to the person service,
+   * when it supports batches. Lookups are grouped by the fields they ask for, since a batch
+   * fetches the same fields for everyone in it.
+   */
+  @Override
+  public List<Future<?>> handleItems(List<RequestItem> requests) {
+    if (!(personService instanceof BatchPersonService)) {
+      return super.handleItems(requests);
+    }
+    return handleItems(requests, new BatchLookup<Person>() {
+      public Object getBatchKey(RequestItem request) {
+        return getSinglePersonId(request) == null
+            ? null : request.getFields(Person.Field.DEFAULT_FIELDS);
+      }
+
+      public Future<List<Person>> fetchBatch(List<RequestItem> batch)
+          throws SocialSpiException {
+        List<UserId> ids = Lists.newArrayListWithExpectedSize(batch.size());
+        for (RequestItem request : batch) {
+          ids.add(getSinglePersonId(request));
+        }
+        RequestItem first = batch.get(0);
+        return ((BatchPersonService) personService).getPeopleBatch(
+            ids, first.getFields(Person.Field.DEFAULT_FIELDS), first.getToken());
+      }
+
+      public String getNotFoundMessage() {
+        return "Person not found";
+      }
+    });
+  }
+
+  /**
+   * @return The id of the one person the request fetches, or null if it is not a get of a
+   *     single person.
+   */
+  private static UserId getSinglePersonId(RequestItem request) {
+    if (!isGet(request)) {
+      return null;
+    }
+    request.applyUrlTemplate(PEOPLE_PATH);
+    Set<UserId> userIds = request.getUsers();
+    Set<String> optionalPersonId = Sets.newLinkedHashSet(request.getListParameter("personId"));
+    if (userIds.size() != 1) {
+      return null;
+    }
+    if (optionalPersonId.isEmpty()) {
+      return request.getGroup().getType() == GroupId.Type.self ? userIds.iterator().next() : null;
+    }
+    if (optionalPersonId.size() == 1) {
+      return new UserId(UserId.Type.userId, optionalPersonId.iterator().next());
+    }
+    return null;
+  }
 }
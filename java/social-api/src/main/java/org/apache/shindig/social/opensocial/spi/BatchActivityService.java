@@ -0,0 +1,49 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shindig.social.opensocial.spi;
+
+import org.apache.shindig.auth.SecurityToken;
+import org.apache.shindig.social.opensocial.model.Activity;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Future;
+
+/**
+ * Optional extension of {@link ActivityService} for implementations that can look up the
+ * activities of several users with a single call to their backend. When the ActivityService also
+ * implements this interface, the activities.get requests of a JSON-RPC batch that each fetch the
+ * activities of one user are answered by one call.
+ */
+public interface BatchActivityService {
+
+  /**
+   * Returns the activities of each of the passed in users, as getActivities would for each of
+   * them on its own.
+   *
+   * @param userIds The users whose activities to fetch.
+   * @param groupId Indicates whether to fetch the activities of each user or of their group.
+   * @param appId The app id.
+   * @param fields The fields to return. Empty set implies all
+   * @param token The gadget token
+   * @return the activities for each user, in the same order.
+   */
+  Future<List<RestfulCollection<Activity>>> getActivitiesBatch(List<UserId> userIds,
+      GroupId groupId, String appId, Set<String> fields, SecurityToken token)
+      throws SocialSpiException;
+}
@@ -0,0 +1,45 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shindig.social.opensocial.spi;
+
+import org.apache.shindig.auth.SecurityToken;
+import org.apache.shindig.social.opensocial.model.Person;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Future;
+
+/**
+ * Optional extension of {@link PersonService} for implementations that can look up several people
+ * with a single call to their backend. When the PersonService also implements this interface, the
+ * people.get requests of a JSON-RPC batch that each fetch one person are answered by one call.
+ */
+public interface BatchPersonService {
+
+  /**
+   * Returns the people that correspond to the passed in person ids.
+   *
+   * @param ids The ids of the people to fetch.
+   * @param fields The fields to fetch.
+   * @param token The gadget token
+   * @return the person for each id, in the same order, with null for ids that don't match a
+   *     person.
+   */
+  Future<List<Person>> getPeopleBatch(List<UserId> ids, Set<String> fields, SecurityToken token)
+      throws SocialSpiException;
+}
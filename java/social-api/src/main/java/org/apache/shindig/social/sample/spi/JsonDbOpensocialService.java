@@ -27,6 +27,9 @@ import org.apache.shindig.social.opensocial.model.Person;
 import org.apache.shindig.social.opensocial.service.BeanConverter;
 import org.apache.shindig.social.opensocial.spi.ActivityService;
 import org.apache.shindig.social.opensocial.spi.AppDataService;
+import org.apache.shindig.social.opensocial.spi.BatchActivityService;
+import org.apache.shindig.social.opensocial.spi.BatchAppDataService;
+import org.apache.shindig.social.opensocial.spi.BatchPersonService;
 import org.apache.shindig.social.opensocial.spi.CollectionOptions;
 import org.apache.shindig.social.opensocial.spi.DataCollection;
 import org.apache.shindig.social.opensocial.spi.GroupId;
@@ -35,6 +38,7 @@ import org.apache.shindig.social.opensocial.spi.RestfulCollection;
 import org.apache.shindig.social.opensocial.spi.SocialSpiException;
 import org.apache.shindig.social.opensocial.spi.UserId;
 
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
@@ -60,7 +64,8 @@ import java.util.concurrent.Future;
  * Implementation of supported services backed by a JSON DB.
  */
 @Singleton
-public class JsonDbOpensocialService implements ActivityService, PersonService, AppDataService {
+public class JsonDbOpensocialService implements ActivityService, BatchActivityService,
+    PersonService, BatchPersonService, AppDataService, BatchAppDataService {
 
   private static final Comparator<Person> NAME_COMPARATOR = new Comparator<Person>() {
     public int compare(Person person, Person person1) {
@@ -119,6 +124,24 @@ public class JsonDbOpensocialService implements ActivityService, PersonService,
   public Future<RestfulCollection<Activity>> getActivities(Set<UserId> userIds,
       GroupId groupId, String appId, Set<String> fields, SecurityToken token)
       throws SocialSpiException  {
+    return ImmediateFuture.newInstance(
+        getActivityCollection(userIds, groupId, appId, fields, token));
+  }
+
+  public Future<List<RestfulCollection<Activity>>> getActivitiesBatch(List<UserId> userIds,
+      GroupId groupId, String appId, Set<String> fields, SecurityToken token)
+      throws SocialSpiException {
+    List<RestfulCollection<Activity>> result =
+        Lists.newArrayListWithExpectedSize(userIds.size());
+    for (UserId userId : userIds) {
+      result.add(getActivityCollection(ImmutableSet.of(userId), groupId, appId, fields, token));
+    }
+    return ImmediateFuture.newInstance(result);
+  }
+
+  private RestfulCollection<Activity> getActivityCollection(Set<UserId> userIds,
+      GroupId groupId, String appId, Set<String> fields, SecurityToken token)
+      throws SocialSpiException  {
     List<Activity> result = Lists.newArrayList();
     try {
       Set<String> idSet = getIdSet(userIds, groupId, token);
@@ -135,7 +158,7 @@ public class JsonDbOpensocialService implements ActivityService, PersonService,
           }
         }
       }
-      return ImmediateFuture.newInstance(new RestfulCollection<Activity>(result));
+      return new RestfulCollection<Activity>(result);
     } catch (JSONException je) {
       throw new SocialSpiException(ResponseError.INTERNAL_ERROR, je.getMessage(), je);
     }
@@ -293,8 +316,43 @@ public class JsonDbOpensocialService implements ActivityService, PersonService,
     }
   }
 
+  public Future<List<Person>> getPeopleBatch(List<UserId> ids, Set<String> fields,
+      SecurityToken token) throws SocialSpiException {
+    try {
+      JSONArray people = db.getJSONArray(PEOPLE_TABLE);
+      Map<String, JSONObject> peopleById = Maps.newHashMap();
+      for (int i = 0; i < people.length(); i++) {
+        JSONObject person = people.getJSONObject(i);
+        peopleById.put(person.getString(Person.Field.ID.toString()), person);
+      }
+
+      List<Person> result = Lists.newArrayListWithExpectedSize(ids.size());
+      for (UserId id : ids) {
+        JSONObject person = peopleById.get(id.getUserId(token));
+        result.add(person == null ? null : convertToPerson(person, fields));
+      }
+      return ImmediateFuture.newInstance(result);
+    } catch (JSONException je) {
+      throw new SocialSpiException(ResponseError.INTERNAL_ERROR, je.getMessage(), je);
+    }
+  }
+
   public Future<DataCollection> getPersonData(Set<UserId> userIds, GroupId groupId,
       String appId, Set<String> fields, SecurityToken token) throws SocialSpiException {
+    return ImmediateFuture.newInstance(getDataCollection(userIds, groupId, fields, token));
+  }
+
+  public Future<List<DataCollection>> getPersonDataBatch(List<UserId> userIds, GroupId groupId,
+      String appId, Set<String> fields, SecurityToken token) throws SocialSpiException {
+    List<DataCollection> result = Lists.newArrayListWithExpectedSize(userIds.size());
+    for (UserId userId : userIds) {
+      result.add(getDataCollection(ImmutableSet.of(userId), groupId, fields, token));
+    }
+    return ImmediateFuture.newInstance(result);
+  }
+
+  private DataCollection getDataCollection(Set<UserId> userIds, GroupId groupId,
+      Set<String> fields, SecurityToken token) throws SocialSpiException {
     try {
       Map<String, Map<String, String>> idToData = Maps.newHashMap();
       Set<String> idSet = getIdSet(userIds, groupId, token);
@@ -321,7 +379,7 @@ public class JsonDbOpensocialService implements ActivityService, PersonService,
         }
         idToData.put(id, data);
       }
-      return ImmediateFuture.newInstance(new DataCollection(idToData));
+      return new DataCollection(idToData);
     } catch (JSONException je) {
       throw new SocialSpiException(ResponseError.INTERNAL_ERROR, je.getMessage(), je);
     }
@@ -28,6 +28,7 @@ import org.apache.shindig.social.core.model.ActivityImpl;
 import org.apache.shindig.social.core.util.BeanJsonConverter;
 import org.apache.shindig.social.opensocial.model.Activity;
 import org.apache.shindig.social.opensocial.spi.ActivityService;
+import org.apache.shindig.social.opensocial.spi.BatchActivityService;
 import org.apache.shindig.social.opensocial.spi.GroupId;
 import org.apache.shindig.social.opensocial.spi.RestfulCollection;
 import org.apache.shindig.social.opensocial.spi.SocialSpiException;
@@ -36,6 +37,7 @@ import org.easymock.classextension.EasyMock;
 
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Future;
 
 public class ActivityHandlerTest extends TestCase {
 
@@ -173,4 +175,34 @@ public class ActivityHandlerTest extends TestCase {
     assertNull(handler.handleDelete(request).get());
     verify();
   }
+
+  public void testHandleItemsBatchesSingleUserGets() throws Exception {
+    BatchingActivityService batchService = EasyMock.createMock(BatchingActivityService.class);
+    handler = new ActivityHandler(batchService);
+
+    setPath("/activities/john.doe/@self");
+    RestfulRequestItem john = request;
+    setPath("/activities/jane.doe/@self");
+    RestfulRequestItem jane = request;
+
+    RestfulCollection<Activity> johnData =
+        new RestfulCollection<Activity>(ImmutableList.<Activity>of());
+    RestfulCollection<Activity> janeData =
+        new RestfulCollection<Activity>(ImmutableList.<Activity>of());
+    List<UserId> ids = ImmutableList.of(JOHN_DOE.iterator().next(),
+        new UserId(UserId.Type.userId, "jane.doe"));
+    EasyMock.expect(batchService.getActivitiesBatch(ids, new GroupId(GroupId.Type.self, null),
+        null, Sets.<String>newHashSet(), token))
+        .andReturn(ImmediateFuture.newInstance(ImmutableList.of(johnData, janeData)));
+
+    EasyMock.replay(batchService);
+    List<Future<?>> responses =
+        handler.handleItems(ImmutableList.<RequestItem>of(john, jane));
+    assertSame(johnData, responses.get(0).get());
+    assertSame(janeData, responses.get(1).get());
+    EasyMock.verify(batchService);
+  }
+
+  private interface BatchingActivityService extends ActivityService, BatchActivityService {
+  }
 }
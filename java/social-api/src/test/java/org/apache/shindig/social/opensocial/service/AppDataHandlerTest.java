@@ -17,6 +17,7 @@
  */
 package org.apache.shindig.social.opensocial.service;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 
@@ -26,6 +27,7 @@ import org.apache.shindig.common.testing.FakeGadgetToken;
 import org.apache.shindig.common.util.ImmediateFuture;
 import org.apache.shindig.social.core.util.BeanJsonConverter;
 import org.apache.shindig.social.opensocial.spi.AppDataService;
+import org.apache.shindig.social.opensocial.spi.BatchAppDataService;
 import org.apache.shindig.social.opensocial.spi.DataCollection;
 import org.apache.shindig.social.opensocial.spi.GroupId;
 import org.apache.shindig.social.opensocial.spi.SocialSpiException;
@@ -34,8 +36,10 @@ import org.easymock.classextension.EasyMock;
 
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Future;
 
 public class AppDataHandlerTest extends TestCase {
 
@@ -242,4 +246,32 @@ public class AppDataHandlerTest extends TestCase {
     assertNull(handler.handleDelete(request).get());
     verify();
   }
+
+  public void testHandleItemsBatchesSingleUserGets() throws Exception {
+    BatchingAppDataService batchService = EasyMock.createMock(BatchingAppDataService.class);
+    handler = new AppDataHandler(batchService);
+
+    setPath("/appdata/john.doe/@self/appId");
+    RestfulRequestItem john = request;
+    setPath("/appdata/jane.doe/@self/appId");
+    RestfulRequestItem jane = request;
+
+    DataCollection johnData = new DataCollection(null);
+    DataCollection janeData = new DataCollection(null);
+    List<UserId> ids = ImmutableList.of(JOHN_DOE.iterator().next(),
+        new UserId(UserId.Type.userId, "jane.doe"));
+    EasyMock.expect(batchService.getPersonDataBatch(ids, new GroupId(GroupId.Type.self, null),
+        "appId", Sets.<String>newHashSet(), token))
+        .andReturn(ImmediateFuture.newInstance(ImmutableList.of(johnData, janeData)));
+
+    EasyMock.replay(batchService);
+    List<Future<?>> responses =
+        handler.handleItems(ImmutableList.<RequestItem>of(john, jane));
+    assertSame(johnData, responses.get(0).get());
+    assertSame(janeData, responses.get(1).get());
+    EasyMock.verify(batchService);
+  }
+
+  private interface BatchingAppDataService extends AppDataService, BatchAppDataService {
+  }
 }
@@ -42,6 +42,8 @@ import org.easymock.classextension.EasyMock;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Collections;
 import java.util.StringTokenizer;
 import java.util.concurrent.ExecutionException;
 import javax.servlet.ServletInputStream;
@@ -145,6 +147,54 @@ public class DataServiceServletTest extends TestCase {
     EasyMock.reset(req, res, appDataHandler, jsonConverter);
   }
 
+  /**
+   * Tests a response that the converter fails on before any of it was sent, which is replaced
+   * by an error.
+   */
+  public void testFailedConversion() throws Exception {
+    expectFailedConversion();
+    EasyMock.expect(res.isCommitted()).andReturn(false);
+    res.resetBuffer();
+    res.sendError(500, "Could not convert response - FAILED");
+
+    EasyMock.replay(req, res, peopleHandler, jsonConverter);
+    servlet.service(req, res);
+    EasyMock.verify(req, res, peopleHandler, jsonConverter);
+    EasyMock.reset(req, res, peopleHandler, jsonConverter);
+  }
+
+  /**
+   * Tests a response that the converter fails on after part of it was sent, which can only be
+   * left truncated.
+   */
+  public void testFailedConversionAfterCommit() throws Exception {
+    expectFailedConversion();
+    EasyMock.expect(res.isCommitted()).andReturn(true);
+
+    EasyMock.replay(req, res, peopleHandler, jsonConverter);
+    servlet.service(req, res);
+    EasyMock.verify(req, res, peopleHandler, jsonConverter);
+    EasyMock.reset(req, res, peopleHandler, jsonConverter);
+  }
+
+  private void expectFailedConversion() throws Exception {
+    String route = '/' + DataServiceServlet.PEOPLE_ROUTE;
+    setupRequest(route, "GET", null);
+
+    String jsonObject = "my lovely json";
+    EasyMock.expect(peopleHandler.handleItem(EasyMock.isA(RestfulRequestItem.class)));
+    EasyMock.expectLastCall().andReturn(ImmediateFuture.newInstance(jsonObject));
+    PrintWriter writer = new PrintWriter(new StringWriter());
+    EasyMock.expect(res.getWriter()).andReturn(writer);
+    jsonConverter.append(EasyMock.same(writer),
+        EasyMock.eq(ImmutableMap.of("entry", jsonObject)),
+        EasyMock.eq(Collections.<String>emptySet()));
+    EasyMock.expectLastCall().andThrow(new RuntimeException("FAILED"));
+
+    res.setCharacterEncoding("UTF-8");
+    res.setContentType("application/json");
+  }
+
   private void verifyHandlerWasFoundForPathInfo(String peoplePathInfo, DataRequestHandler handler)
       throws Exception {
     String post = "POST";
@@ -160,12 +210,10 @@ public class DataServiceServletTest extends TestCase {
     EasyMock.expect(handler.handleItem(EasyMock.isA(RequestItem.class)));
     EasyMock.expectLastCall().andReturn(ImmediateFuture.newInstance(jsonObject));
 
-    EasyMock.expect(jsonConverter.convertToString(ImmutableMap.of("entry", jsonObject)))
-        .andReturn("{ 'entry' : " + jsonObject + " }");
-
     PrintWriter writerMock = EasyMock.createMock(PrintWriter.class);
     EasyMock.expect(res.getWriter()).andReturn(writerMock);
-    writerMock.write(jsonObject);
+    jsonConverter.append(writerMock, ImmutableMap.of("entry", jsonObject),
+        Collections.<String>emptySet());
     res.setCharacterEncoding("UTF-8");
     res.setContentType("application/json");
 
@@ -17,6 +17,7 @@
  */
 package org.apache.shindig.social.opensocial.service;
 
+import org.apache.shindig.common.ContainerConfig;
 import org.apache.shindig.common.testing.FakeGadgetToken;
 import org.apache.shindig.common.util.ImmediateFuture;
 import org.apache.shindig.social.core.util.BeanAtomConverter;
@@ -31,6 +32,7 @@ import com.google.common.collect.Maps;
 import com.google.inject.Provider;
 
 import junit.framework.TestCase;
+import org.easymock.IAnswer;
 import org.easymock.classextension.EasyMock;
 import org.json.JSONArray;
 import org.json.JSONObject;
@@ -39,7 +41,11 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.concurrent.Callable;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import javax.servlet.ServletInputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -113,15 +119,14 @@ public class JsonRpcServletTest extends TestCase {
     JSONObject err = new JSONObject(
         "{id:id,error:{message:'notImplemented: The service junk is not implemented',code:501}}");
 
-    PrintWriter writerMock = EasyMock.createMock(PrintWriter.class);
-    EasyMock.expect(res.getWriter()).andReturn(writerMock);
-    writerMock.write(EasyMock.eq(err.toString()));
-    EasyMock.expectLastCall();
+    StringWriter out = new StringWriter();
+    EasyMock.expect(res.getWriter()).andReturn(new PrintWriter(out));
 
-    EasyMock.replay(req, res, jsonConverter, writerMock);
+    EasyMock.replay(req, res, jsonConverter);
     servlet.service(req, res);
-    EasyMock.verify(req, res, jsonConverter, writerMock);
+    EasyMock.verify(req, res, jsonConverter);
     EasyMock.reset(req, res, jsonConverter);
+    assertEquals(err.toString(), new JSONObject(out.toString()).toString());
   }
 
 
@@ -138,15 +143,14 @@ public class JsonRpcServletTest extends TestCase {
     JSONObject err = new JSONObject(
         "{id:id,error:{message:'internalError: FAILED',code:500}}");
 
-    PrintWriter writerMock = EasyMock.createMock(PrintWriter.class);
-    EasyMock.expect(res.getWriter()).andReturn(writerMock);
-    writerMock.write(EasyMock.eq(err.toString()));
-    EasyMock.expectLastCall();
+    StringWriter out = new StringWriter();
+    EasyMock.expect(res.getWriter()).andReturn(new PrintWriter(out));
 
-    EasyMock.replay(req, res, appDataHandler, jsonConverter, writerMock);
+    EasyMock.replay(req, res, appDataHandler, jsonConverter);
     servlet.service(req, res);
-    EasyMock.verify(req, res, appDataHandler, jsonConverter, writerMock);
+    EasyMock.verify(req, res, appDataHandler, jsonConverter);
     EasyMock.reset(req, res, appDataHandler, jsonConverter);
+    assertEquals(err.toString(), new JSONObject(out.toString()).toString());
   }
 
   private void verifyHandlerWasFoundForMethod(String json, DataRequestHandler handler)
@@ -158,21 +162,19 @@ public class JsonRpcServletTest extends TestCase {
     EasyMock.expect(handler.handleItem(EasyMock.isA(RequestItem.class)));
     EasyMock.expectLastCall().andReturn(ImmediateFuture.newInstance(resultObject));
 
-    EasyMock.expect(jsonConverter.convertToJson(resultObject))
-        .andReturn(new JSONObject(ImmutableMap.of("foo", "bar")));
+    expectJson(resultObject, 1);
 
     JSONObject result = new JSONObject();
     result.put("id", "id");
     result.put("data", ImmutableMap.of("foo", "bar"));
-    PrintWriter writerMock = EasyMock.createMock(PrintWriter.class);
-    EasyMock.expect(res.getWriter()).andReturn(writerMock);
-    writerMock.write(EasyMock.eq(result.toString()));
-    EasyMock.expectLastCall();
+    StringWriter out = new StringWriter();
+    EasyMock.expect(res.getWriter()).andReturn(new PrintWriter(out));
 
-    EasyMock.replay(req, res, handler, jsonConverter, writerMock);
+    EasyMock.replay(req, res, handler, jsonConverter);
     servlet.service(req, res);
-    EasyMock.verify(req, res, handler, jsonConverter, writerMock);
+    EasyMock.verify(req, res, handler, jsonConverter);
     EasyMock.reset(req, res, handler, jsonConverter);
+    assertEquals(result.toString(), new JSONObject(out.toString()).toString());
   }
 
   public void testBasicBatch() throws Exception {
@@ -187,19 +189,119 @@ public class JsonRpcServletTest extends TestCase {
     EasyMock.expect(activityHandler.handleItem(EasyMock.isA(RequestItem.class)));
     EasyMock.expectLastCall().andReturn(responseItemFuture);
 
-    EasyMock.expect(jsonConverter.convertToJson(resultObject))
-        .andStubReturn(new JSONObject(ImmutableMap.of("foo", "bar")));
+    expectJson(resultObject, 2);
 
     JSONArray result = new JSONArray("[{id:'1',data:{foo:'bar'}}," + "{id:'2',data:{foo:'bar'}}]");
-    PrintWriter writerMock = EasyMock.createMock(PrintWriter.class);
-    EasyMock.expect(res.getWriter()).andReturn(writerMock);
-    writerMock.write(EasyMock.eq(result.toString()));
-    EasyMock.expectLastCall();
+    StringWriter out = new StringWriter();
+    EasyMock.expect(res.getWriter()).andReturn(new PrintWriter(out));
 
-    EasyMock.replay(req, res, peopleHandler, activityHandler, jsonConverter, writerMock);
+    EasyMock.replay(req, res, peopleHandler, activityHandler, jsonConverter);
     servlet.service(req, res);
-    EasyMock.verify(req, res, peopleHandler, activityHandler, jsonConverter, writerMock);
+    EasyMock.verify(req, res, peopleHandler, activityHandler, jsonConverter);
     EasyMock.reset(req, res, peopleHandler, activityHandler, jsonConverter);
+    assertEquals(result.toString(), new JSONArray(out.toString()).toString());
+  }
+
+  public void testBatchDeadline() throws Exception {
+    String batchJson =
+        "[{method:people.get,id:'1'},{method:activities.get,id:'2'}]";
+    setupRequest(batchJson);
+
+    ContainerConfig containerConfig = EasyMock.createMock(ContainerConfig.class);
+    EasyMock.expect(containerConfig.get(ContainerConfig.DEFAULT_CONTAINER,
+        ApiServlet.BATCH_TIMEOUT_KEY)).andReturn("10");
+    servlet.setContainerConfig(containerConfig);
+
+    // Never run, so it misses the deadline.
+    FutureTask<Object> slow = new FutureTask<Object>(new Callable<Object>() {
+      public Object call() {
+        return "too late";
+      }
+    });
+    String resultObject = "my lovely json";
+    EasyMock.expect(peopleHandler.handleItem(EasyMock.isA(RequestItem.class)));
+    EasyMock.expectLastCall().andReturn(slow);
+    EasyMock.expect(activityHandler.handleItem(EasyMock.isA(RequestItem.class)));
+    EasyMock.expectLastCall().andReturn(ImmediateFuture.newInstance(resultObject));
+
+    expectJson(resultObject, 1);
+
+    JSONArray result = new JSONArray(
+        "[{id:'1',error:{message:'internalError: Request timed out',code:500}},"
+        + "{id:'2',data:{foo:'bar'}}]");
+    StringWriter out = new StringWriter();
+    EasyMock.expect(res.getWriter()).andReturn(new PrintWriter(out));
+
+    EasyMock.replay(req, res, peopleHandler, activityHandler, jsonConverter,
+        containerConfig);
+    servlet.service(req, res);
+    EasyMock.verify(req, res, peopleHandler, activityHandler, jsonConverter,
+        containerConfig);
+    assertTrue(slow.isCancelled());
+    EasyMock.reset(req, res, peopleHandler, activityHandler, jsonConverter);
+    assertEquals(result.toString(), new JSONArray(out.toString()).toString());
+  }
+
+  public void testBatchConversionFailure() throws Exception {
+    String batchJson =
+        "[{method:people.get,id:'1'},{method:activities.get,id:'2'}]";
+    setupRequest(batchJson);
+
+    String brokenObject = "my broken json";
+    EasyMock.expect(peopleHandler.handleItem(EasyMock.isA(RequestItem.class)));
+    EasyMock.expectLastCall().andReturn(ImmediateFuture.newInstance(brokenObject));
+    EasyMock.expect(activityHandler.handleItem(EasyMock.isA(RequestItem.class)));
+    EasyMock.expectLastCall().andReturn(ImmediateFuture.newInstance("my lovely json"));
+
+    jsonConverter.append(EasyMock.isA(Appendable.class), EasyMock.eq(brokenObject),
+        EasyMock.eq(Collections.<String>emptySet()));
+    EasyMock.expectLastCall().andAnswer(new IAnswer<Object>() {
+      public Object answer() throws Throwable {
+        ((Appendable) EasyMock.getCurrentArguments()[0]).append("{\"foo\":");
+        throw new RuntimeException("FAILED");
+      }
+    });
+
+    // Nothing was sent yet, so the partial output is replaced by the error
+    final StringWriter out = new StringWriter();
+    EasyMock.expect(res.getWriter()).andReturn(new PrintWriter(out)).times(2);
+    EasyMock.expect(res.isCommitted()).andReturn(false);
+    res.resetBuffer();
+    EasyMock.expectLastCall().andAnswer(new IAnswer<Object>() {
+      public Object answer() {
+        out.getBuffer().setLength(0);
+        return null;
+      }
+    });
+
+    JSONObject result = new JSONObject(
+        "{message:'internalError: Could not convert response - FAILED',code:500}");
+
+    EasyMock.replay(req, res, peopleHandler, activityHandler, jsonConverter);
+    servlet.service(req, res);
+    EasyMock.verify(req, res, peopleHandler, activityHandler, jsonConverter);
+    EasyMock.reset(req, res, peopleHandler, activityHandler, jsonConverter);
+    assertEquals(result.toString(), new JSONObject(out.toString()).toString());
+  }
+
+  public void testDeadlineUsesTokenContainer() throws Exception {
+    ContainerConfig containerConfig = EasyMock.createMock(ContainerConfig.class);
+    EasyMock.expect(containerConfig.get("mine", ApiServlet.BATCH_TIMEOUT_KEY)).andReturn("60000");
+    EasyMock.expect(containerConfig.get("unknown", ApiServlet.BATCH_TIMEOUT_KEY)).andReturn(null);
+    EasyMock.expect(containerConfig.get(ContainerConfig.DEFAULT_CONTAINER,
+        ApiServlet.BATCH_TIMEOUT_KEY)).andReturn("10");
+    servlet.setContainerConfig(containerConfig);
+    EasyMock.replay(containerConfig);
+
+    long start = System.currentTimeMillis();
+    long mine = servlet.getDeadline(new FakeGadgetToken().setContainer("mine"));
+    long unknown = servlet.getDeadline(new FakeGadgetToken().setContainer("unknown"));
+    long end = System.currentTimeMillis();
+
+    EasyMock.verify(containerConfig);
+    assertTrue(mine >= start + 60000);
+    // Falls back to the default container, not the built in timeout
+    assertTrue(unknown <= end + 10);
   }
 
   public void testGetExecution() throws Exception {
@@ -216,19 +318,31 @@ public class JsonRpcServletTest extends TestCase {
     EasyMock.expect(peopleHandler.handleItem(EasyMock.isA(RequestItem.class)));
     EasyMock.expectLastCall().andReturn(responseItemFuture);
 
-    EasyMock.expect(jsonConverter.convertToJson(resultObject))
-        .andReturn(new JSONObject(ImmutableMap.of("foo", "bar")));
+    expectJson(resultObject, 1);
 
     JSONObject result = new JSONObject("{id:'1',data:{foo:'bar'}}");
-    PrintWriter writerMock = EasyMock.createMock(PrintWriter.class);
-    EasyMock.expect(res.getWriter()).andReturn(writerMock);
-    writerMock.write(EasyMock.eq(result.toString()));
-    EasyMock.expectLastCall();
+    StringWriter out = new StringWriter();
+    EasyMock.expect(res.getWriter()).andReturn(new PrintWriter(out));
 
-    EasyMock.replay(req, res, peopleHandler, activityHandler, jsonConverter, writerMock);
+    EasyMock.replay(req, res, peopleHandler, activityHandler, jsonConverter);
     servlet.service(req, res);
-    EasyMock.verify(req, res, peopleHandler, activityHandler, jsonConverter, writerMock);
+    EasyMock.verify(req, res, peopleHandler, activityHandler, jsonConverter);
     EasyMock.reset(req, res, peopleHandler, activityHandler, jsonConverter);
+    assertEquals(result.toString(), new JSONObject(out.toString()).toString());
+  }
+
+  /**
+   * Expects the data to be streamed by the json converter, which writes {foo:'bar'} for it.
+   */
+  private void expectJson(Object data, int times) throws IOException {
+    jsonConverter.append(EasyMock.isA(Appendable.class), EasyMock.eq(data),
+        EasyMock.eq(Collections.<String>emptySet()));
+    EasyMock.expectLastCall().andAnswer(new IAnswer<Object>() {
+      public Object answer() throws Throwable {
+        ((Appendable) EasyMock.getCurrentArguments()[0]).append("{\"foo\":\"bar\"}");
+        return null;
+      }
+    }).times(times);
   }
 
   private void setupRequest(String json) throws IOException {
@@ -22,6 +22,7 @@ import org.apache.shindig.common.util.ImmediateFuture;
 import org.apache.shindig.social.ResponseError;
 import org.apache.shindig.social.core.model.PersonImpl;
 import org.apache.shindig.social.opensocial.model.Person;
+import org.apache.shindig.social.opensocial.spi.BatchPersonService;
 import org.apache.shindig.social.opensocial.spi.CollectionOptions;
 import org.apache.shindig.social.opensocial.spi.GroupId;
 import org.apache.shindig.social.opensocial.spi.PersonService;
@@ -37,10 +38,12 @@ import com.google.common.collect.Sets;
 import junit.framework.TestCase;
 import org.easymock.classextension.EasyMock;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 public class PersonHandlerTest extends TestCase {
   private PersonService personService;
@@ -253,4 +256,39 @@ public class PersonHandlerTest extends TestCase {
 
     verify();
   }
+
+  public void testHandleItemsBatchesSinglePersonGets() throws Exception {
+    BatchingPersonService batchService = EasyMock.createMock(BatchingPersonService.class);
+    handler = new PersonHandler(batchService);
+
+    setPath("/people/john.doe/@self");
+    RestfulRequestItem self = request;
+    setPath("/people/john.doe/@friends/jane.doe");
+    RestfulRequestItem friend = request;
+    setPath("/people/john.doe/@friends/nobody");
+    RestfulRequestItem missing = request;
+
+    Person john = new PersonImpl();
+    Person jane = new PersonImpl();
+    List<UserId> ids = ImmutableList.of(JOHN_DOE.iterator().next(),
+        new UserId(UserId.Type.userId, "jane.doe"), new UserId(UserId.Type.userId, "nobody"));
+    EasyMock.expect(batchService.getPeopleBatch(ids, DEFAULT_FIELDS, token))
+        .andReturn(ImmediateFuture.newInstance(Arrays.asList(john, jane, null)));
+
+    EasyMock.replay(batchService);
+    List<Future<?>> responses =
+        handler.handleItems(ImmutableList.<RequestItem>of(self, friend, missing));
+    assertEquals(john, responses.get(0).get());
+    assertEquals(jane, responses.get(1).get());
+    try {
+      responses.get(2).get();
+      fail();
+    } catch (ExecutionException ee) {
+      assertEquals(ResponseError.BAD_REQUEST, ((SocialSpiException) ee.getCause()).getError());
+    }
+    EasyMock.verify(batchService);
+  }
+
+  private interface BatchingPersonService extends PersonService, BatchPersonService {
+  }
 }
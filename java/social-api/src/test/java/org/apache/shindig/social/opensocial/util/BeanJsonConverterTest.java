@@ -30,7 +30,9 @@ import org.apache.shindig.social.opensocial.model.Address;
 import org.apache.shindig.social.opensocial.model.ListField;
 import org.apache.shindig.social.opensocial.model.MediaItem;
 import org.apache.shindig.social.opensocial.model.Person;
+import org.apache.shindig.social.opensocial.spi.RestfulCollection;
 
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.inject.Guice;
@@ -186,6 +188,56 @@ public class BeanJsonConverterTest extends TestCase {
     assertEquals(colors[0], jsonArray.get(0));
   }
 
+  public void testAppendMatchesConvertToJson() throws Exception {
+    StringBuilder person = new StringBuilder();
+    beanJsonConverter.append(person, johnDoe);
+    assertEquals(beanJsonConverter.convertToJson(johnDoe).toString(),
+        new JSONObject(person.toString()).toString());
+
+    StringBuilder activities = new StringBuilder();
+    beanJsonConverter.append(activities, Lists.newArrayList(activity, activity));
+    assertEquals(beanJsonConverter.convertToJson(Lists.newArrayList(activity, activity))
+        .toString(), new JSONArray(activities.toString()).toString());
+  }
+
+  public void testAppendEscapesAndSkipsNulls() throws Exception {
+    Map<String, String> map = Maps.newLinkedHashMap();
+    map.put("quoted", "say \"hi\"</script>\n");
+    map.put("missing", null);
+
+    assertEquals("{\"quoted\":\"say \\\"hi\\\"<\\/script>\\n\"}",
+        beanJsonConverter.convertToString(map));
+  }
+
+  public void testAppendOnlyRequestedFields() throws Exception {
+    StringBuilder buf = new StringBuilder();
+    beanJsonConverter.append(buf,
+        new RestfulCollection<Person>(Lists.newArrayList(johnDoe, johnDoe), 0, 2),
+        ImmutableSet.of("id", "name"));
+
+    JSONObject result = new JSONObject(buf.toString());
+    assertEquals(2, result.getInt("totalResults"));
+    JSONObject person = result.getJSONArray("entry").getJSONObject(1);
+    assertEquals(johnDoe.getId(), person.getString("id"));
+    // Nested objects are written in full
+    assertEquals(johnDoe.getName().getUnstructured(),
+        person.getJSONObject("name").getString("unstructured"));
+    assertFalse(person.has("phoneNumbers"));
+    assertFalse(person.has("emails"));
+    // Not a field of the model, so always written
+    assertFalse(person.getBoolean("isOwner"));
+  }
+
+  public void testAppendAlwaysWritesId() throws Exception {
+    StringBuilder buf = new StringBuilder();
+    beanJsonConverter.append(buf, johnDoe, ImmutableSet.of("name"));
+
+    JSONObject person = new JSONObject(buf.toString());
+    assertEquals(johnDoe.getId(), person.getString("id"));
+    assertTrue(person.has("name"));
+    assertFalse(person.has("phoneNumbers"));
+  }
+
   public void testJsonToActivity() throws Exception {
     String jsonActivity = "{userId : 5, id : 6, mediaItems : ["
       + "{url : 'hello', mimeType : 'mimey', type : 'video'}"
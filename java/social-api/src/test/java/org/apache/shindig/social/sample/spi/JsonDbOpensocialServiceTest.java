@@ -32,6 +32,7 @@ import org.apache.shindig.social.opensocial.spi.RestfulCollection;
 import org.apache.shindig.social.opensocial.spi.SocialSpiException;
 import org.apache.shindig.social.opensocial.spi.UserId;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Sets;
@@ -41,6 +42,7 @@ import com.google.inject.Injector;
 import junit.framework.TestCase;
 
 import java.util.Collections;
+import java.util.List;
 
 /**
  * Test the JSONOpensocialService
@@ -81,6 +83,17 @@ public class JsonDbOpensocialServiceTest extends TestCase {
     assertNotNull("Canonical user not found", person);
   }
 
+  public void testGetPeopleBatch() throws Exception {
+    List<Person> people = db.getPeopleBatch(ImmutableList.of(JOHN_DOE,
+        new UserId(UserId.Type.userId, "nobody"), CANON_USER), Person.Field.DEFAULT_FIELDS,
+        token).get();
+
+    assertEquals(3, people.size());
+    assertEquals(JOHN_DOE.getUserId(), people.get(0).getId());
+    assertNull(people.get(1));
+    assertEquals(CANONICAL_USER_ID, people.get(2).getId());
+  }
+
   public void testGetExpectedFriends() throws Exception {
     CollectionOptions options = new CollectionOptions();
     options.setSortBy(PersonService.TOP_FRIENDS_SORT);
@@ -135,6 +148,15 @@ public class JsonDbOpensocialServiceTest extends TestCase {
     assertTrue(responseItem.getTotalResults() == 3);
   }
 
+  public void testGetActivitiesBatch() throws Exception {
+    List<RestfulCollection<Activity>> responseItems = db.getActivitiesBatch(
+        ImmutableList.of(CANON_USER, JOHN_DOE), SELF_GROUP, APP_ID,
+        Collections.<String>emptySet(), new FakeGadgetToken()).get();
+    assertEquals(2, responseItems.size());
+    assertEquals(2, responseItems.get(0).getTotalResults());
+    assertEquals(1, responseItems.get(1).getTotalResults());
+  }
+
   public void testGetExpectedActivity() throws Exception {
     Activity activity = db.getActivity(
         CANON_USER, SELF_GROUP, APP_ID,
@@ -172,6 +194,16 @@ public class JsonDbOpensocialServiceTest extends TestCase {
     assertTrue(responseItem.getEntry().get(CANONICAL_USER_ID).containsKey("size"));
   }
 
+  public void testGetPersonDataBatch() throws Exception {
+    List<DataCollection> responseItems = db.getPersonDataBatch(
+        ImmutableList.of(CANON_USER, JOHN_DOE), SELF_GROUP, APP_ID,
+        Collections.<String>emptySet(), new FakeGadgetToken()).get();
+    assertEquals(2, responseItems.size());
+    assertEquals(2, responseItems.get(0).getEntry().get(CANONICAL_USER_ID).size());
+    assertNull(responseItems.get(0).getEntry().get(JOHN_DOE.getUserId()));
+    assertEquals(1, responseItems.get(1).getEntry().get(JOHN_DOE.getUserId()).size());
+  }
+
   public void testGetExpectedAppDataForPlural() throws Exception {
     DataCollection responseItem = db.getPersonData(
         Sets.newHashSet(CANON_USER, JOHN_DOE), SELF_GROUP, APP_ID, Collections.<String>emptySet(),